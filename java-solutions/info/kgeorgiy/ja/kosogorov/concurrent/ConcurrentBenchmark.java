@@ -0,0 +1,389 @@
+package info.kgeorgiy.ja.kosogorov.concurrent;
+
+import info.kgeorgiy.java.advanced.concurrent.AdvancedIP;
+import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Timings of the concurrent package. Every scenario runs a few warm-up rounds first and prints
+ * the best of the measured ones, so results are comparable between runs on the same machine.
+ */
+public class ConcurrentBenchmark {
+    private static final String USAGE = "Expected arguments any|primitive|granularity|latency|overhead|chunking|fairness <threads> [<size>]";
+    private static final int WARMUP = 3;
+    private static final int ROUNDS = 5;
+
+    private interface Measured {
+        void run() throws InterruptedException;
+    }
+
+    private static long best(Measured measured) throws InterruptedException {
+        for (int i = 0; i < WARMUP; i++) {
+            measured.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            final long start = System.nanoTime();
+            measured.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static void print(String name, long nanos) {
+        System.out.printf(Locale.ROOT, "%-32s %10.2f ms%n", name, nanos / 1e6);
+    }
+
+    /**
+     * The mapper {@link ParallelMapperImpl} replaced: one task per element in a deque guarded by a single monitor,
+     * a {@code notify} per element and a lock around every result.
+     */
+    private static class MonitorMapper implements ParallelMapper {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private final List<Thread> threads = new ArrayList<>();
+
+        private MonitorMapper(int threads) {
+            for (int i = 0; i < threads; i++) {
+                this.threads.add(new Thread(() -> {
+                    try {
+                        while (!Thread.interrupted()) {
+                            final Runnable task;
+                            synchronized (tasks) {
+                                while (tasks.isEmpty()) {
+                                    tasks.wait();
+                                }
+                                task = tasks.poll();
+                            }
+                            task.run();
+                        }
+                    } catch (InterruptedException ignored) {}
+                }));
+            }
+            this.threads.forEach(Thread::start);
+        }
+
+        @Override
+        public <T, R> List<R> map(Function<? super T, ? extends R> f, List<? extends T> args) throws InterruptedException {
+            final List<R> result = new ArrayList<>(Collections.nCopies(args.size(), null));
+            final int[] done = new int[1];
+            for (int i = 0; i < args.size(); i++) {
+                final int index = i;
+                final T arg = args.get(i);
+                synchronized (tasks) {
+                    tasks.add(() -> {
+                        final R value = f.apply(arg);
+                        synchronized (result) {
+                            result.set(index, value);
+                        }
+                        synchronized (done) {
+                            if (++done[0] == args.size()) {
+                                done.notify();
+                            }
+                        }
+                    });
+                    tasks.notify();
+                }
+            }
+            synchronized (done) {
+                while (done[0] < args.size()) {
+                    done.wait();
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void close() {
+            threads.forEach(Thread::interrupt);
+            for (Thread thread : threads) {
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException ignored) {}
+                }
+            }
+        }
+    }
+
+    private static int spin(int value, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            value = value * 31 + i;
+        }
+        return value;
+    }
+
+    private static List<Integer> range(int size) {
+        final List<Integer> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(i);
+        }
+        return values;
+    }
+
+    /**
+     * Looks for an element at 1% of the list with {@code any} and with {@code mapReduce} over
+     * the same predicate, which visits every element as {@code any} did before it short-circuited.
+     */
+    private static void any(int threads, int size) throws InterruptedException {
+        final List<Integer> values = range(size);
+        final int target = size / 100;
+        final AdvancedIP.Monoid<Boolean> or = new AdvancedIP.Monoid<>(false, Boolean::logicalOr);
+        final IterativeParallelism parallelism = new IterativeParallelism();
+        try (ParallelMapperImpl mapper = new ParallelMapperImpl(threads)) {
+            final IterativeParallelism mapped = new IterativeParallelism(mapper);
+            print("threads any", best(() -> parallelism.any(threads, values, v -> v == target)));
+            print("threads full scan", best(() -> parallelism.mapReduce(threads, values, v -> v == target, or)));
+            print("mapper any", best(() -> mapped.any(threads, values, v -> v == target)));
+            print("mapper full scan", best(() -> mapped.mapReduce(threads, values, v -> v == target, or)));
+        }
+    }
+
+    /**
+     * Sums, minimizes and maximizes the same numbers as an {@code int[]} through {@link PrimitiveParallelism}
+     * and as a {@code List<Integer>} through {@link IterativeParallelism#reduce}.
+     */
+    private static void primitive(int threads, int size) throws InterruptedException {
+        final int[] array = new int[size];
+        for (int i = 0; i < size; i++) {
+            array[i] = (int) (i * 0x9E3779B9L >>> 8);
+        }
+        final PrimitiveParallelism primitive = new PrimitiveParallelism();
+        print("int[] sum", best(() -> primitive.reduce(threads, array, PrimitiveParallelism.IntMonoid.SUM)));
+        print("int[] min", best(() -> primitive.reduce(threads, array, PrimitiveParallelism.IntMonoid.MIN)));
+        print("int[] max", best(() -> primitive.reduce(threads, array, PrimitiveParallelism.IntMonoid.MAX)));
+        final List<Integer> boxed = new ArrayList<>(size);
+        for (int value : array) {
+            boxed.add(value);
+        }
+        final IterativeParallelism parallelism = new IterativeParallelism();
+        print("List<Integer> sum", best(() -> parallelism.reduce(threads, boxed, new AdvancedIP.Monoid<>(0, Integer::sum))));
+        print("List<Integer> min", best(() -> parallelism.reduce(threads, boxed, new AdvancedIP.Monoid<>(Integer.MAX_VALUE, Math::min))));
+        print("List<Integer> max", best(() -> parallelism.reduce(threads, boxed, new AdvancedIP.Monoid<>(Integer.MIN_VALUE, Math::max))));
+    }
+
+    /**
+     * Maps lists of cheap and of heavier elements with {@link ParallelMapperImpl} and {@link MonitorMapper}
+     * for worker counts doubling up to {@code threads}, printing nanoseconds per element.
+     */
+    private static void granularity(int threads, int size) throws InterruptedException {
+        final List<Integer> values = range(size);
+        System.out.println("workers  work     batched ns/elem  monitor ns/elem");
+        for (int workers = 1; workers <= threads; workers *= 2) {
+            for (int work : new int[]{0, 100, 1000}) {
+                final long batched;
+                try (ParallelMapper mapper = new ParallelMapperImpl(workers)) {
+                    batched = best(() -> mapper.map(v -> spin(v, work), values));
+                }
+                final long monitor;
+                try (ParallelMapper mapper = new MonitorMapper(workers)) {
+                    monitor = best(() -> mapper.map(v -> spin(v, work), values));
+                }
+                System.out.printf(Locale.ROOT, "%7d %5d %18.1f %16.1f%n",
+                        workers, work, batched / (double) size, monitor / (double) size);
+            }
+        }
+    }
+
+    /**
+     * Maps the identity over lists of growing size, printing nanoseconds per element of every mapper call
+     * next to a sequential loop collecting to a list.
+     */
+    private static void overhead(int threads, int size) throws InterruptedException {
+        System.out.println("elements  loop ns/elem  mapper ns/elem  monitor ns/elem");
+        try (ParallelMapper mapper = new ParallelMapperImpl(threads); ParallelMapper monitor = new MonitorMapper(threads)) {
+            for (int elements = 10; elements <= size; elements *= 10) {
+                final List<Integer> values = range(elements);
+                final int repeats = Math.max(1, size / elements);
+                final long loop = best(() -> {
+                    for (int i = 0; i < repeats; i++) {
+                        final List<Integer> result = new ArrayList<>(values.size());
+                        for (Integer value : values) {
+                            result.add(value);
+                        }
+                    }
+                });
+                final long mapped = best(() -> {
+                    for (int i = 0; i < repeats; i++) {
+                        mapper.map(Function.identity(), values);
+                    }
+                });
+                final long locked = best(() -> {
+                    for (int i = 0; i < repeats; i++) {
+                        monitor.map(Function.identity(), values);
+                    }
+                });
+                final double total = (double) repeats * elements;
+                System.out.printf(Locale.ROOT, "%8d %13.1f %15.1f %16.1f%n",
+                        elements, loop / total, mapped / total, locked / total);
+            }
+        }
+    }
+
+    /**
+     * Splits values into {@code threads} sublists, as {@link IterativeParallelism} did before it measured
+     * element cost, and sums them on a thread each.
+     */
+    private static long fixedSplit(int threads, List<Integer> values, int work) throws InterruptedException {
+        final long[] partial = new long[threads];
+        final List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final int chunk = i;
+            final List<Integer> part = values.subList(values.size() * i / threads, values.size() * (i + 1) / threads);
+            workers.add(new Thread(() -> partial[chunk] = part.stream().map(v -> (long) spin(v, work)).reduce(0L, Long::sum)));
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long sum = 0;
+        for (long value : partial) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * Sums cheap and heavier functions of {@link ArrayList} and {@link LinkedList} values with
+     * {@link IterativeParallelism} and with a fixed split into {@code threads} sublists.
+     */
+    private static void chunking(int threads, int size) throws InterruptedException {
+        final AdvancedIP.Monoid<Long> sum = new AdvancedIP.Monoid<>(0L, Long::sum);
+        final IterativeParallelism parallelism = new IterativeParallelism();
+        System.out.println("list        work  adaptive ms  fixed split ms");
+        for (List<Integer> values : List.of(range(size), new LinkedList<>(range(size)))) {
+            for (int work : new int[]{0, 1000}) {
+                final long adaptive = best(() -> parallelism.mapReduce(threads, values, v -> (long) spin(v, work), sum));
+                final long fixed = best(() -> fixedSplit(threads, values, work));
+                System.out.printf(Locale.ROOT, "%-10s %5d %12.2f %15.2f%n",
+                        values.getClass().getSimpleName(), work, adaptive / 1e6, fixed / 1e6);
+            }
+        }
+    }
+
+    /**
+     * Times {@code calls} runs of {@code call} while another thread keeps mapping {@code large} on the same mapper.
+     */
+    private static void underLoad(String name, ParallelMapper mapper, List<Integer> large, int calls, Measured call)
+            throws InterruptedException {
+        final AtomicBoolean stop = new AtomicBoolean();
+        final Thread background = new Thread(() -> {
+            try {
+                while (!stop.get()) {
+                    mapper.map(v -> spin(v, 10), large);
+                }
+            } catch (InterruptedException ignored) {}
+        });
+        background.start();
+        final long[] latencies = new long[calls];
+        try {
+            Thread.sleep(100);
+            for (int i = 0; i < calls; i++) {
+                final long start = System.nanoTime();
+                call.run();
+                latencies[i] = System.nanoTime() - start;
+                Thread.sleep(5);
+            }
+        } finally {
+            stop.set(true);
+            background.join();
+        }
+        Arrays.sort(latencies);
+        System.out.printf(Locale.ROOT, "%-24s p50 %10.3f ms  p99 %10.3f ms%n", name,
+                latencies[calls / 2] / 1e6, latencies[Math.min(calls - 1, calls * 99 / 100)] / 1e6);
+    }
+
+    /**
+     * Measures 10-element calls submitted while a call of {@code size} elements runs, at both priorities
+     * of {@link ParallelMapperImpl} and on the first-come first-served {@link MonitorMapper}.
+     */
+    private static void fairness(int threads, int size) throws InterruptedException {
+        final List<Integer> large = range(size);
+        final List<Integer> small = range(10);
+        final int calls = 100;
+        try (ParallelMapperImpl mapper = new ParallelMapperImpl(threads)) {
+            underLoad("normal priority", mapper, large, calls,
+                    () -> mapper.map(ParallelMapperImpl.Priority.NORMAL, v -> spin(v, 10), small));
+            underLoad("high priority", mapper, large, calls,
+                    () -> mapper.map(ParallelMapperImpl.Priority.HIGH, v -> spin(v, 10), small));
+        }
+        try (MonitorMapper mapper = new MonitorMapper(threads)) {
+            underLoad("monitor mapper", mapper, large, calls, () -> mapper.map(v -> spin(v, 10), small));
+        }
+    }
+
+    /**
+     * Virtual thread factory when the runtime has one, platform threads otherwise.
+     */
+    private static ThreadFactory elementThreads() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.defaultThreadFactory();
+        }
+    }
+
+    /**
+     * Maps elements that block for 10 ms, as remote lookups do, with {@code threads} pooled workers
+     * and with a thread per element.
+     */
+    private static void latency(int threads, int size) throws InterruptedException {
+        final List<Integer> values = range(size);
+        final Function<Integer, Integer> blocking = v -> {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return v;
+        };
+        final ThreadFactory factory = elementThreads();
+        System.out.println("element threads: " + factory.getClass().getName());
+        try (ParallelMapper mapper = new ParallelMapperImpl(threads)) {
+            print(threads + " pooled workers", best(() -> mapper.map(blocking, values)));
+        }
+        try (ParallelMapper mapper = new ParallelMapperImpl(factory, 0)) {
+            print("thread per element", best(() -> mapper.map(blocking, values)));
+        }
+        try (ParallelMapper mapper = new ParallelMapperImpl(factory, size / 10)) {
+            print("thread per element, limit " + size / 10, best(() -> mapper.map(blocking, values)));
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args == null || args.length < 2 || args[0] == null || args[1] == null) {
+            System.err.println(USAGE);
+            return;
+        }
+        try {
+            final int threads = Integer.parseInt(args[1]);
+            final int size = args.length > 2 ? Integer.parseInt(args[2]) : 10_000_000;
+            switch (args[0]) {
+                case "any" -> any(threads, size);
+                case "primitive" -> primitive(threads, args.length > 2 ? size : 100_000_000);
+                case "granularity" -> granularity(threads, args.length > 2 ? size : 1_000_000);
+                case "latency" -> latency(threads, args.length > 2 ? size : 10_000);
+                case "overhead" -> overhead(threads, args.length > 2 ? size : 1_000_000);
+                case "chunking" -> chunking(threads, args.length > 2 ? size : 100_000);
+                case "fairness" -> fairness(threads, size);
+                default -> System.err.println(USAGE);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage() + ". " + USAGE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
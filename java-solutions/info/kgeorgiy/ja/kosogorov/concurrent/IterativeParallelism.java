@@ -4,30 +4,148 @@ import info.kgeorgiy.java.advanced.concurrent.AdvancedIP;
 import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class IterativeParallelism implements AdvancedIP {
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int MAX_SURPLUS = 3;
+    private static final int SAMPLE_SIZE = 64;
+    private static final long MIN_CHUNK_NANOS = 100_000;
+
     private final ParallelMapper parallelMapper;
+    private final ForkJoinPool forkJoinPool;
 
     public IterativeParallelism() {
         this.parallelMapper = null;
+        this.forkJoinPool = null;
     }
 
     public IterativeParallelism(ParallelMapper parallelMapper) {
         this.parallelMapper = parallelMapper;
+        this.forkJoinPool = null;
+    }
+
+    /**
+     * Runs operations on {@code forkJoinPool}, recursively splitting values while workers run short of queued
+     * work, into at most {@value #CHUNKS_PER_THREAD} chunks per requested thread, so that idle workers can steal work.
+     */
+    public IterativeParallelism(ForkJoinPool forkJoinPool) {
+        this.parallelMapper = null;
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    private static class ChunkTask<P, R> extends RecursiveTask<List<R>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<? extends P> values;
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final Function<? super Stream<? extends P>, R> function;
+
+        private ChunkTask(List<? extends P> values, int from, int to, int grain,
+                          Function<? super Stream<? extends P>, R> function) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.function = function;
+        }
+
+        @Override
+        protected List<R> compute() {
+            // once this worker has enough queued tasks for thieves, the range is cheaper to finish here
+            if (to - from <= grain || getSurplusQueuedTaskCount() > MAX_SURPLUS) {
+                final List<R> result = new ArrayList<>();
+                result.add(function.apply(values.subList(from, to).stream()));
+                return result;
+            }
+            final int middle = (from + to) >>> 1;
+            final ChunkTask<P, R> left = new ChunkTask<>(values, from, middle, grain, function);
+            left.fork();
+            final List<R> right = new ChunkTask<>(values, middle, to, grain, function).compute();
+            final List<R> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+    }
+
+    private <R, P> List<R> forkJoin(
+        int threads,
+        List<? extends P> values,
+        Function<? super Stream<? extends P>, R> function
+    ) throws InterruptedException {
+        final int chunks = Math.max(1, threads * CHUNKS_PER_THREAD);
+        final int grain = Math.max(1, (values.size() + chunks - 1) / chunks);
+        try {
+            return forkJoinPool.submit(new ChunkTask<>(values, 0, values.size(), grain, function)).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
     }
 
-    private <T, R, P> T operation(
+    <T, R, P> T operation(
         int threads,
         List<? extends P> values,
         Function<? super Stream<? extends P>, R> function,
         Function<? super Stream<R>, T> finisher
+    ) throws InterruptedException {
+        if (!(values instanceof RandomAccess)) {
+            values = new ArrayList<>(values);
+        }
+        if (forkJoinPool != null) {
+            return finisher.apply(forkJoin(threads, values, function).stream());
+        }
+        // sample chunks are real chunks: their results are kept, and their timing estimates the cost of the rest.
+        // They double in size until they take long enough to time, so an expensive function runs a single element
+        // on the caller thread, and they never take more than one thread's share
+        final int share = Math.max(1, values.size() / Math.max(1, threads));
+        final int maxSample = Math.min(values.size(), Math.min(SAMPLE_SIZE, share));
+        final List<R> results = new ArrayList<>();
+        int sample = 0;
+        long elapsed = 0;
+        int step = 1;
+        do {
+            final int to = Math.min(maxSample, sample + step);
+            final long start = System.nanoTime();
+            results.add(function.apply(values.subList(sample, to).stream()));
+            elapsed += System.nanoTime() - start;
+            sample = to;
+            step *= 2;
+        } while (sample < maxSample && elapsed < MIN_CHUNK_NANOS);
+        final List<? extends P> rest = values.subList(sample, values.size());
+        if (!rest.isEmpty()) {
+            final long work = elapsed * rest.size() / Math.max(1, sample);
+            final int chunks = (int) Math.max(1, Math.min(threads, work / MIN_CHUNK_NANOS));
+            if (chunks == 1) {
+                results.add(function.apply(rest.stream()));
+            } else {
+                results.addAll(split(chunks, rest, function));
+            }
+        }
+        return finisher.apply(results.stream());
+    }
+
+    private <R, P> List<R> split(
+        int threads,
+        List<? extends P> values,
+        Function<? super Stream<? extends P>, R> function
     ) throws InterruptedException {
         threads = Math.min(threads, values.size());
         List<Stream<? extends P>> streams = new ArrayList<>();
@@ -70,7 +188,14 @@ public class IterativeParallelism implements AdvancedIP {
         } else {
             results = parallelMapper.map(function, streams);
         }
-        return finisher.apply(results.stream());
+        return results;
+    }
+
+    /**
+     * Starts a fused pipeline over {@code values}, see {@link ParallelPipeline}.
+     */
+    public <T> ParallelPipeline<T, T> pipeline(int threads, List<? extends T> values) {
+        return new ParallelPipeline<>(this, threads, values, Function.identity());
     }
 
     @Override
@@ -82,17 +207,12 @@ public class IterativeParallelism implements AdvancedIP {
 
     @Override
     public <T> List<T> filter(int threads, List<? extends T> values, Predicate<? super T> predicate) throws InterruptedException {
-        // :NOTE: intermediate list
-        return operation(threads, values,
-            stream -> stream.filter(predicate),
-            stream -> stream.flatMap(Function.identity()).collect(Collectors.toList()));
+        return this.<T>pipeline(threads, values).filter(predicate).toList();
     }
 
     @Override
     public <T, U> List<U> map(int threads, List<? extends T> values, Function<? super T, ? extends U> f) throws InterruptedException {
-        return operation(threads, values,
-            stream -> stream.map(f).collect(Collectors.toList()),
-            stream -> stream.flatMap(Collection::stream).collect(Collectors.toList()));
+        return pipeline(threads, values).<U>map(f).toList();
     }
 
     @Override
@@ -108,16 +228,27 @@ public class IterativeParallelism implements AdvancedIP {
         return maximum(threads, values, comparator.reversed());
     }
 
+    private <T> boolean findAny(int threads, List<? extends T> values, Predicate<? super T> predicate) throws InterruptedException {
+        // shared flag lets every chunk, including ones still queued in the mapper, stop after the first match
+        final AtomicBoolean found = new AtomicBoolean();
+        return operation(threads, values,
+            stream -> {
+                if (stream.takeWhile(ignored -> !found.get()).anyMatch(predicate)) {
+                    found.set(true);
+                }
+                return found.get();
+            },
+            stream -> found.get());
+    }
+
     @Override
     public <T> boolean all(int threads, List<? extends T> values, Predicate<? super T> predicate) throws InterruptedException {
-        return operation(threads, values,
-            stream -> stream.allMatch(predicate),
-            stream -> stream.reduce(true, (a, b) -> a && b));
+        return !findAny(threads, values, predicate.negate());
     }
 
     @Override
     public <T> boolean any(int threads, List<? extends T> values, Predicate<? super T> predicate) throws InterruptedException {
-        return !all(threads, values, predicate.negate());
+        return findAny(threads, values, predicate);
     }
 
     @Override
@@ -0,0 +1,198 @@
+package info.kgeorgiy.ja.kosogorov.concurrent;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters of a {@link ParallelMapperImpl}. All recording is lock-free.
+ * A task is a claimed batch of elements, or a single element in thread-per-element mode.
+ */
+public class MapperMetrics implements MapperMetricsMXBean {
+    private final LongSupplier queueDepth;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder idleNanos = new LongAdder();
+    private final LatencyHistogram taskLatency = new LatencyHistogram();
+    private final LatencyHistogram mapLatency = new LatencyHistogram();
+
+    MapperMetrics(LongSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    void recordSubmitted(int elements) {
+        submitted.add(elements);
+    }
+
+    void recordTask(int elements, long nanos) {
+        completed.add(elements);
+        busyNanos.add(nanos);
+        taskLatency.record(nanos);
+    }
+
+    void recordIdle(long nanos) {
+        idleNanos.add(nanos);
+    }
+
+    void recordMap(long nanos) {
+        mapLatency.record(nanos);
+    }
+
+    /**
+     * Registers these metrics in the platform MBean server under {@code name}.
+     */
+    public ObjectName register(String name) throws JMException {
+        final ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Pending batches, or elements in flight in thread-per-element mode.
+     */
+    @Override
+    public long getQueueDepth() {
+        return queueDepth.getAsLong();
+    }
+
+    @Override
+    public long getSubmittedElements() {
+        return submitted.sum();
+    }
+
+    @Override
+    public long getCompletedElements() {
+        return completed.sum();
+    }
+
+    @Override
+    public long getBusyNanos() {
+        return busyNanos.sum();
+    }
+
+    @Override
+    public long getIdleNanos() {
+        return idleNanos.sum();
+    }
+
+    @Override
+    public long getMapCalls() {
+        return mapLatency.getCount();
+    }
+
+    @Override
+    public long getTaskLatencyP50Nanos() {
+        return taskLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getTaskLatencyP99Nanos() {
+        return taskLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getTaskLatencyMaxNanos() {
+        return taskLatency.getMax();
+    }
+
+    @Override
+    public long getMapLatencyP50Nanos() {
+        return mapLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getMapLatencyP99Nanos() {
+        return mapLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getMapLatencyMaxNanos() {
+        return mapLatency.getMax();
+    }
+
+    public static class Snapshot {
+        private final long queueDepth;
+        private final long submittedElements;
+        private final long completedElements;
+        private final long busyNanos;
+        private final long idleNanos;
+        private final long mapCalls;
+        private final long taskLatencyP50Nanos;
+        private final long taskLatencyP99Nanos;
+        private final long mapLatencyP50Nanos;
+        private final long mapLatencyP99Nanos;
+
+        private Snapshot(MapperMetrics metrics) {
+            this.queueDepth = metrics.getQueueDepth();
+            this.submittedElements = metrics.getSubmittedElements();
+            this.completedElements = metrics.getCompletedElements();
+            this.busyNanos = metrics.getBusyNanos();
+            this.idleNanos = metrics.getIdleNanos();
+            this.mapCalls = metrics.getMapCalls();
+            this.taskLatencyP50Nanos = metrics.getTaskLatencyP50Nanos();
+            this.taskLatencyP99Nanos = metrics.getTaskLatencyP99Nanos();
+            this.mapLatencyP50Nanos = metrics.getMapLatencyP50Nanos();
+            this.mapLatencyP99Nanos = metrics.getMapLatencyP99Nanos();
+        }
+
+        public long getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getSubmittedElements() {
+            return submittedElements;
+        }
+
+        public long getCompletedElements() {
+            return completedElements;
+        }
+
+        public long getBusyNanos() {
+            return busyNanos;
+        }
+
+        public long getIdleNanos() {
+            return idleNanos;
+        }
+
+        public double getUtilization() {
+            final long total = busyNanos + idleNanos;
+            return total == 0 ? 0 : (double) busyNanos / total;
+        }
+
+        public long getMapCalls() {
+            return mapCalls;
+        }
+
+        public long getTaskLatencyP50Nanos() {
+            return taskLatencyP50Nanos;
+        }
+
+        public long getTaskLatencyP99Nanos() {
+            return taskLatencyP99Nanos;
+        }
+
+        public long getMapLatencyP50Nanos() {
+            return mapLatencyP50Nanos;
+        }
+
+        public long getMapLatencyP99Nanos() {
+            return mapLatencyP99Nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("queue=%d submitted=%d completed=%d utilization=%.2f maps=%d"
+                    + " task p50/p99=%d/%dns map p50/p99=%d/%dns",
+                queueDepth, submittedElements, completedElements, getUtilization(), mapCalls,
+                taskLatencyP50Nanos, taskLatencyP99Nanos, mapLatencyP50Nanos, mapLatencyP99Nanos);
+        }
+    }
+}
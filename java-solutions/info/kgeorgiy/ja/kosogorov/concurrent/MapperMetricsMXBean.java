@@ -0,0 +1,27 @@
+package info.kgeorgiy.ja.kosogorov.concurrent;
+
+public interface MapperMetricsMXBean {
+    long getQueueDepth();
+
+    long getSubmittedElements();
+
+    long getCompletedElements();
+
+    long getBusyNanos();
+
+    long getIdleNanos();
+
+    long getMapCalls();
+
+    long getTaskLatencyP50Nanos();
+
+    long getTaskLatencyP99Nanos();
+
+    long getTaskLatencyMaxNanos();
+
+    long getMapLatencyP50Nanos();
+
+    long getMapLatencyP99Nanos();
+
+    long getMapLatencyMaxNanos();
+}
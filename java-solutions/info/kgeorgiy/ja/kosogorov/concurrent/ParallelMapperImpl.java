@@ -3,119 +3,468 @@ package info.kgeorgiy.ja.kosogorov.concurrent;
 import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
 
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
 
 public class ParallelMapperImpl implements ParallelMapper {
-    private final Queue<Task> tasks;
+    private static final int BATCHES_PER_THREAD = 4;
+    private static final int MAX_BATCH = 1024;
+
+    /**
+     * Scheduling class of a call. Workers always take batches of the highest class present,
+     * calls of one class are served round-robin. Ignored in thread-per-element mode.
+     */
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    private final List<Queue<Task>> tasks;
+    private final Semaphore batches;
     private final List<Thread> threads;
-    private boolean isClosed;
+    private final ThreadFactory threadFactory;
+    private final Semaphore concurrency;
+    private final Set<Thread> elementThreads;
+    private final MapperMetrics metrics;
+    private volatile boolean isClosed;
 
     public ParallelMapperImpl(int threads) {
         this.threads = new ArrayList<>();
-        tasks = new ArrayDeque<>();
+        tasks = queues();
+        batches = new Semaphore(0);
+        threadFactory = null;
+        concurrency = null;
+        elementThreads = null;
+        metrics = new MapperMetrics(batches::availablePermits);
         isClosed = false;
+        final Runnable worker = () -> {
+            try {
+                while (!Thread.interrupted()) {
+                    final long start = System.nanoTime();
+                    batches.acquire();
+                    metrics.recordIdle(System.nanoTime() - start);
+                    runBatch();
+                }
+            } catch (InterruptedException ignored) {}
+        };
         while (threads-- > 0) {
-            // :NOTE: create 1 runnable, not n of them
-            Thread thread = new Thread(() -> {
+            this.threads.add(new Thread(worker));
+        }
+        this.threads.forEach(Thread::start);
+    }
+
+    /**
+     * Creates mapper running every element on its own thread made by {@code threadFactory},
+     * for example {@code Thread.ofVirtual().factory()} for blocking functions.
+     * @param threadFactory factory of per-element threads
+     * @param concurrency maximal number of elements in flight, non-positive for no limit
+     */
+    public ParallelMapperImpl(ThreadFactory threadFactory, int concurrency) {
+        this.threads = new ArrayList<>();
+        this.tasks = queues();
+        this.batches = new Semaphore(0);
+        this.threadFactory = threadFactory;
+        this.concurrency = concurrency > 0 ? new Semaphore(concurrency) : null;
+        this.elementThreads = ConcurrentHashMap.newKeySet();
+        this.metrics = new MapperMetrics(elementThreads::size);
+        this.isClosed = false;
+    }
+
+    private static List<Queue<Task>> queues() {
+        final List<Queue<Task>> queues = new ArrayList<>();
+        for (int i = 0; i < Priority.values().length; i++) {
+            queues.add(new ConcurrentLinkedQueue<>());
+        }
+        return queues;
+    }
+
+    public MapperMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void startElements(Task task) throws InterruptedException {
+        for (int i = 0; i < task.size; i++) {
+            // the task is queued, so close() finishes it
+            if (isClosed) {
+                return;
+            }
+            if (concurrency != null) {
                 try {
-                    while (!Thread.interrupted()) {
-                        Runnable task;
-                        synchronized (tasks) {
-                            while (tasks.isEmpty()) {
-                                tasks.wait();
-                            }
-                            task = tasks.poll().runnable;
-                        }
-                        task.run();
+                    concurrency.acquire();
+                } catch (InterruptedException e) {
+                    task.counter.close();
+                    throw e;
+                }
+            }
+            final int j = i;
+            final Thread thread = threadFactory.newThread(() -> {
+                try {
+                    task.run(j);
+                } finally {
+                    elementThreads.remove(Thread.currentThread());
+                    if (concurrency != null) {
+                        concurrency.release();
                     }
-                } catch (InterruptedException ignored) {}
+                }
             });
-            this.threads.add(thread);
+            elementThreads.add(thread);
+            thread.start();
+        }
+    }
+
+    private void runBatch() {
+        // a permit guarantees an unclaimed batch, but its task may be off the queue while another worker rotates it
+        while (!Thread.currentThread().isInterrupted()) {
+            for (Queue<Task> queue : tasks) {
+                Task task;
+                while ((task = queue.peek()) != null) {
+                    final int from = task.claim();
+                    if (from < 0) {
+                        queue.remove(task);
+                        continue;
+                    }
+                    // only the worker that took the task off puts it back, behind the other calls
+                    if (queue.remove(task) && !task.isExhausted()) {
+                        queue.add(task);
+                    }
+                    task.run(from);
+                    return;
+                }
+            }
+            Thread.onSpinWait();
         }
-        this.threads.forEach(Thread::start);
     }
 
     private static class Task {
+        private final MapperMetrics metrics;
         private final Counter counter;
-        private final Runnable runnable;
+        private final IntConsumer element;
+        private final int size;
+        private final int batch;
+        private final AtomicInteger next;
 
-        private Task(Counter counter, Runnable runnable) {
+        private Task(MapperMetrics metrics, Counter counter, IntConsumer element, int size, int batch) {
+            this.metrics = metrics;
             this.counter = counter;
-            this.runnable = runnable;
+            this.element = element;
+            this.size = size;
+            this.batch = batch;
+            this.next = new AtomicInteger();
+        }
+
+        private int batches() {
+            return (size + batch - 1) / batch;
+        }
+
+        private boolean isExhausted() {
+            return next.get() >= size;
+        }
+
+        private int claim() {
+            final int from = next.getAndAdd(batch);
+            return from < size ? from : -1;
+        }
+
+        private void run(int from) {
+            final int to = Math.min(from + batch, size);
+            final long start = System.nanoTime();
+            try {
+                for (int i = from; i < to; i++) {
+                    element.accept(i);
+                }
+            } finally {
+                metrics.recordTask(to - from, System.nanoTime() - start);
+                counter.add(to - from);
+            }
         }
     }
 
     private static class Counter {
-        private int value;
-        private final int tasks;
-        private boolean isClosed;
+        private final AtomicInteger remaining;
+        private final CountDownLatch latch;
+        private final AtomicBoolean finished;
+        private Consumer<Boolean> onDone;
 
-        private Counter(int initialValue, int tasks) {
-            this.value = initialValue;
-            this.tasks = tasks;
-            this.isClosed = false;
+        private Counter(int tasks) {
+            this.remaining = new AtomicInteger(tasks);
+            this.latch = new CountDownLatch(1);
+            this.finished = new AtomicBoolean();
         }
 
-        private synchronized void increment() {
-            value++;
-            if (value == tasks) {
-                notify();
+        private void add(int count) {
+            // the decrement publishes the batch's plain result writes to whoever sees zero
+            if (remaining.addAndGet(-count) == 0) {
+                finish(false);
             }
         }
 
-        private synchronized void close() {
-            if (!isClosed) {
-                value = tasks;
-                isClosed = true;
-                notify();
+        private void close() {
+            finish(true);
+        }
+
+        private void finish(boolean closed) {
+            if (finished.compareAndSet(false, true)) {
+                latch.countDown();
+                onDone.accept(closed);
             }
         }
+
+        private void await() throws InterruptedException {
+            latch.await();
+        }
+    }
+
+    private static class Completed<R> {
+        private final long index;
+        private final R value;
+        private final RuntimeException error;
+
+        private Completed(long index, R value, RuntimeException error) {
+            this.index = index;
+            this.value = value;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Schedules {@code size} elements. {@code onDone} gets {@code true} if the mapper was closed before they finished.
+     * @throws IllegalStateException if the mapper is already closed
+     */
+    private Task submit(Priority priority, IntConsumer element, int size, Consumer<Boolean> onDone)
+            throws InterruptedException {
+        final Counter counter = new Counter(size);
+        final Queue<Task> queue = tasks.get(priority.ordinal());
+        // batches are capped so that a huge call gives way to others after every batch
+        final int batch = threadFactory != null ? 1
+                : Math.min(MAX_BATCH, Math.max(1, size / (Math.max(1, threads.size()) * BATCHES_PER_THREAD)));
+        final Task task = new Task(metrics, counter, element, size, batch);
+        counter.onDone = closed -> {
+            if (threadFactory != null) {
+                queue.remove(task);
+            }
+            onDone.accept(closed);
+        };
+        // under the lock of close(), so a task is either rejected here or finished by close()
+        synchronized (this) {
+            if (isClosed) {
+                throw new IllegalStateException("Mapper is closed");
+            }
+            queue.add(task);
+        }
+        metrics.recordSubmitted(size);
+        if (threadFactory == null) {
+            batches.release(task.batches());
+        } else {
+            startElements(task);
+        }
+        return task;
+    }
+
+    private static <T> IntConsumer element(
+            Function<? super T, ?> f,
+            List<? extends T> args,
+            Object[] result,
+            Queue<RuntimeException> errors
+    ) {
+        return j -> {
+            try {
+                result[j] = f.apply(args.get(j));
+            } catch (RuntimeException e) {
+                errors.add(e);
+            }
+        };
+    }
+
+    private static RuntimeException failure(Queue<RuntimeException> errors) {
+        final RuntimeException first = errors.peek();
+        if (first == null) {
+            return null;
+        }
+        final RuntimeException exception = new RuntimeException("Error occurred while mapping", first);
+        errors.stream().skip(1).forEach(exception::addSuppressed);
+        return exception;
+    }
+
+    /**
+     * Copies results to a growable list, as callers of {@link #map} may modify it.
+     */
+    @SuppressWarnings("unchecked")
+    private static <R> List<R> asList(Object[] result) {
+        return new ArrayList<>((List<R>) Arrays.asList(result));
     }
 
     @Override
     public <T, R> List<R> map(Function<? super T, ? extends R> f, List<? extends T> args) throws InterruptedException {
-        // :NOTE: needs a check for isClosed
-        List<R> result = new ArrayList<>(Collections.nCopies(args.size(), null));
-        Counter counter = new Counter(0, args.size());
-        RuntimeException exception = new RuntimeException("Error occurred while mapping");
-        for (int i = 0; i < args.size(); i++) {
-            final int j = i;
-            final T arg = args.get(j);
-            synchronized (tasks) {
-                tasks.add(new Task(counter, () -> {
+        return map(Priority.NORMAL, f, args);
+    }
+
+    public <T, R> List<R> map(Priority priority, Function<? super T, ? extends R> f, List<? extends T> args)
+            throws InterruptedException {
+        final Object[] result = new Object[args.size()];
+        if (args.isEmpty()) {
+            return asList(result);
+        }
+        final Queue<RuntimeException> errors = new ConcurrentLinkedQueue<>();
+        final long start = System.nanoTime();
+        submit(priority, element(f, args, result, errors), args.size(), closed -> {}).counter.await();
+        metrics.recordMap(System.nanoTime() - start);
+        final RuntimeException exception = failure(errors);
+        if (exception != null) {
+            throw exception;
+        }
+        return asList(result);
+    }
+
+    /**
+     * Maps {@code args} without waiting for the result. The future fails with the aggregated exception
+     * if {@code f} fails, or with {@link IllegalStateException} if the mapper is closed before or during the call.
+     * In thread-per-element mode with a concurrency limit, submission itself may block.
+     */
+    public <T, R> CompletableFuture<List<R>> mapAsync(Function<? super T, ? extends R> f, List<? extends T> args)
+            throws InterruptedException {
+        return mapAsync(Priority.NORMAL, f, args);
+    }
+
+    public <T, R> CompletableFuture<List<R>> mapAsync(
+            Priority priority,
+            Function<? super T, ? extends R> f,
+            List<? extends T> args
+    ) throws InterruptedException {
+        final Object[] result = new Object[args.size()];
+        final CompletableFuture<List<R>> future = new CompletableFuture<>();
+        if (args.isEmpty()) {
+            future.complete(asList(result));
+            return future;
+        }
+        final Queue<RuntimeException> errors = new ConcurrentLinkedQueue<>();
+        final long start = System.nanoTime();
+        try {
+            submit(priority, element(f, args, result, errors), args.size(), closed -> {
+                metrics.recordMap(System.nanoTime() - start);
+                final RuntimeException exception = failure(errors);
+                if (closed) {
+                    future.completeExceptionally(new IllegalStateException("Mapper is closed"));
+                } else if (exception != null) {
+                    future.completeExceptionally(exception);
+                } else {
+                    future.complete(asList(result));
+                }
+            });
+        } catch (IllegalStateException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Maps inputs keeping at most {@code maxInFlight} of them in work and passes results to {@code consumer}
+     * on the calling thread, in input order if {@code ordered} and in completion order otherwise.
+     * Failed elements are skipped and their exceptions are thrown together after all inputs are processed.
+     * @throws IllegalArgumentException if {@code maxInFlight} is less than one
+     * @throws IllegalStateException if the mapper is closed before all inputs are submitted
+     */
+    public <T, R> void mapStreaming(
+            Function<? super T, ? extends R> f,
+            Iterator<? extends T> inputs,
+            int maxInFlight,
+            boolean ordered,
+            Consumer<? super R> consumer
+    ) throws InterruptedException {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive, got " + maxInFlight);
+        }
+        final BlockingQueue<Completed<R>> completed = new LinkedBlockingQueue<>();
+        final Map<Long, Completed<R>> pending = new HashMap<>();
+        final RuntimeException exception = new RuntimeException("Error occurred while mapping");
+        long submitted = 0;
+        long delivered = 0;
+        while (inputs.hasNext() || delivered < submitted) {
+            if (inputs.hasNext() && submitted - delivered < maxInFlight) {
+                final T arg = inputs.next();
+                final long index = submitted++;
+                final AtomicBoolean reported = new AtomicBoolean();
+                submit(Priority.NORMAL, ignored -> {
+                    R value = null;
+                    RuntimeException error = null;
                     try {
-                        R res = f.apply(arg);
-                        synchronized (result) {
-                            result.set(j, res);
-                        }
+                        value = f.apply(arg);
                     } catch (RuntimeException e) {
-                        exception.addSuppressed(e);
-                    } finally {
-                        counter.increment();
+                        error = e;
+                    }
+                    if (reported.compareAndSet(false, true)) {
+                        completed.add(new Completed<>(index, value, error));
                     }
-                }));
-                tasks.notify();
+                }, 1, closed -> {
+                    if (closed && reported.compareAndSet(false, true)) {
+                        completed.add(new Completed<>(index, null, new IllegalStateException("Mapper is closed")));
+                    }
+                });
+                continue;
+            }
+            Completed<R> next = completed.take();
+            if (ordered) {
+                pending.put(next.index, next);
+                while ((next = pending.remove(delivered)) != null) {
+                    deliver(next, consumer, exception);
+                    delivered++;
+                }
+            } else {
+                deliver(next, consumer, exception);
+                delivered++;
             }
         }
         if (exception.getSuppressed().length > 0) {
             throw exception;
         }
-        synchronized (counter) {
-            while (counter.value < args.size()) {
-                counter.wait();
-            }
+    }
+
+    /**
+     * Same as {@link #mapStreaming(Function, Iterator, int, boolean, Consumer)} over the elements of {@code inputs}.
+     * @throws IllegalArgumentException if {@code maxInFlight} is less than one
+     * @throws IllegalStateException if the mapper is closed before all inputs are submitted
+     */
+    public <T, R> void mapStreaming(
+            Function<? super T, ? extends R> f,
+            Stream<? extends T> inputs,
+            int maxInFlight,
+            boolean ordered,
+            Consumer<? super R> consumer
+    ) throws InterruptedException {
+        mapStreaming(f, inputs.iterator(), maxInFlight, ordered, consumer);
+    }
+
+    private static <R> void deliver(Completed<R> completed, Consumer<? super R> consumer, RuntimeException exception) {
+        if (completed.error != null) {
+            exception.addSuppressed(completed.error);
+        } else {
+            consumer.accept(completed.value);
         }
-        return result;
     }
 
     @Override
     public void close() {
-        if (isClosed) {
-            return;
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+            // :NOTE: before it would make maps hang forever if they started after ending existing tasks
+            isClosed = true;
         }
-        // :NOTE: before it would make maps hang forever if they started after ending existing tasks
-        isClosed = true;
         threads.forEach(Thread::interrupt);
+        if (elementThreads != null) {
+            elementThreads.forEach(Thread::interrupt);
+        }
         for (int i = 0; i < threads.size(); i++) {
             try {
                 threads.get(i).join();
@@ -123,9 +472,7 @@ public class ParallelMapperImpl implements ParallelMapper {
                 --i;
             }
         }
-        synchronized (tasks) {
-            tasks.forEach(task -> task.counter.close());
-        }
+        tasks.forEach(queue -> queue.forEach(task -> task.counter.close()));
     }
 }
 
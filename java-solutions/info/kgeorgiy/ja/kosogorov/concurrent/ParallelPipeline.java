@@ -0,0 +1,85 @@
+package info.kgeorgiy.ja.kosogorov.concurrent;
+
+import info.kgeorgiy.java.advanced.concurrent.AdvancedIP;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Chain of stages over a list, run by {@link IterativeParallelism}. Stages are fused, so every chunk
+ * passes through the whole chain in one go, and nothing is materialized before the terminal operation.
+ *
+ * @param <P> type of source elements
+ * @param <T> type of elements after all stages
+ */
+public class ParallelPipeline<P, T> {
+    private final IterativeParallelism parallelism;
+    private final int threads;
+    private final List<? extends P> values;
+    private final Function<Stream<? extends P>, Stream<? extends T>> stages;
+
+    ParallelPipeline(
+        IterativeParallelism parallelism,
+        int threads,
+        List<? extends P> values,
+        Function<Stream<? extends P>, Stream<? extends T>> stages
+    ) {
+        this.parallelism = parallelism;
+        this.threads = threads;
+        this.values = values;
+        this.stages = stages;
+    }
+
+    public <U> ParallelPipeline<P, U> map(Function<? super T, ? extends U> f) {
+        return new ParallelPipeline<>(parallelism, threads, values, stream -> stages.apply(stream).map(f));
+    }
+
+    public ParallelPipeline<P, T> filter(Predicate<? super T> predicate) {
+        return new ParallelPipeline<>(parallelism, threads, values, stream -> stages.apply(stream).filter(predicate));
+    }
+
+    /**
+     * Collects elements to an {@link ArrayList} sized to the total of all chunks.
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> toList() throws InterruptedException {
+        return parallelism.operation(threads, values,
+            stream -> stages.apply(stream).toArray(),
+            chunks -> {
+                final List<Object[]> parts = chunks.collect(Collectors.toList());
+                final List<T> result = new ArrayList<>(parts.stream().mapToInt(part -> part.length).sum());
+                for (Object[] part : parts) {
+                    for (Object element : part) {
+                        result.add((T) element);
+                    }
+                }
+                return result;
+            });
+    }
+
+    public String join() throws InterruptedException {
+        return parallelism.operation(threads, values,
+            stream -> stages.apply(stream).map(Object::toString).collect(Collectors.joining()),
+            chunks -> chunks.collect(Collectors.joining()));
+    }
+
+    public long count() throws InterruptedException {
+        return parallelism.operation(threads, values,
+            stream -> stages.apply(stream).count(),
+            chunks -> chunks.mapToLong(Long::longValue).sum());
+    }
+
+    public <R> R mapReduce(Function<? super T, ? extends R> lift, AdvancedIP.Monoid<R> monoid) throws InterruptedException {
+        return parallelism.operation(threads, values,
+            stream -> stages.apply(stream).<R>map(lift).reduce(monoid.getIdentity(), monoid.getOperator()),
+            chunks -> chunks.reduce(monoid.getIdentity(), monoid.getOperator()));
+    }
+
+    public T reduce(AdvancedIP.Monoid<T> monoid) throws InterruptedException {
+        return mapReduce(Function.identity(), monoid);
+    }
+}
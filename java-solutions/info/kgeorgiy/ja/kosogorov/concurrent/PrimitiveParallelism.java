@@ -0,0 +1,211 @@
+package info.kgeorgiy.ja.kosogorov.concurrent;
+
+import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Parallel reductions over ranges of {@code int[]}, {@code long[]} and {@code double[]} without boxing elements.
+ * Only per-chunk bookkeeping is boxed when running on a {@link ParallelMapper}.
+ */
+public class PrimitiveParallelism {
+    private final ParallelMapper parallelMapper;
+
+    public PrimitiveParallelism() {
+        this.parallelMapper = null;
+    }
+
+    public PrimitiveParallelism(ParallelMapper parallelMapper) {
+        this.parallelMapper = parallelMapper;
+    }
+
+    public static class IntMonoid {
+        public static final IntMonoid SUM = new IntMonoid(0, Integer::sum);
+        public static final IntMonoid MIN = new IntMonoid(Integer.MAX_VALUE, Math::min);
+        public static final IntMonoid MAX = new IntMonoid(Integer.MIN_VALUE, Math::max);
+
+        private final int identity;
+        private final IntBinaryOperator operator;
+
+        public IntMonoid(int identity, IntBinaryOperator operator) {
+            this.identity = identity;
+            this.operator = operator;
+        }
+    }
+
+    public static class LongMonoid {
+        public static final LongMonoid SUM = new LongMonoid(0, Long::sum);
+        public static final LongMonoid MIN = new LongMonoid(Long.MAX_VALUE, Math::min);
+        public static final LongMonoid MAX = new LongMonoid(Long.MIN_VALUE, Math::max);
+
+        private final long identity;
+        private final LongBinaryOperator operator;
+
+        public LongMonoid(long identity, LongBinaryOperator operator) {
+            this.identity = identity;
+            this.operator = operator;
+        }
+    }
+
+    public static class DoubleMonoid {
+        public static final DoubleMonoid SUM = new DoubleMonoid(0, Double::sum);
+        public static final DoubleMonoid MIN = new DoubleMonoid(Double.POSITIVE_INFINITY, Math::min);
+        public static final DoubleMonoid MAX = new DoubleMonoid(Double.NEGATIVE_INFINITY, Math::max);
+
+        private final double identity;
+        private final DoubleBinaryOperator operator;
+
+        public DoubleMonoid(double identity, DoubleBinaryOperator operator) {
+            this.identity = identity;
+            this.operator = operator;
+        }
+    }
+
+    private interface Chunk {
+        void run(int chunk, int from, int to);
+    }
+
+    private static int chunks(int threads, int size) {
+        return Math.max(1, Math.min(threads, size));
+    }
+
+    private void split(int threads, int from, int to, Chunk body) throws InterruptedException {
+        final int chunks = chunks(threads, to - from);
+        final List<Runnable> tasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            final int chunk = i;
+            final int left = from + (int) ((long) (to - from) * i / chunks);
+            final int right = from + (int) ((long) (to - from) * (i + 1) / chunks);
+            tasks.add(() -> body.run(chunk, left, right));
+        }
+        if (parallelMapper != null) {
+            parallelMapper.map(task -> {
+                task.run();
+                return null;
+            }, tasks);
+            return;
+        }
+        // a failed chunk would otherwise leave the identity in its partial result
+        final Queue<RuntimeException> failures = new ConcurrentLinkedQueue<>();
+        final List<Thread> threadList = new ArrayList<>();
+        for (Runnable task : tasks) {
+            threadList.add(new Thread(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        threadList.forEach(Thread::start);
+        InterruptedException error = null;
+        for (int i = 0; i < threadList.size(); i++) {
+            try {
+                threadList.get(i).join();
+            } catch (InterruptedException e) {
+                --i;
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        final RuntimeException failure = failures.poll();
+        if (failure != null) {
+            failures.forEach(failure::addSuppressed);
+            throw failure;
+        }
+    }
+
+    public int mapReduce(int threads, int[] values, int from, int to, IntUnaryOperator lift, IntMonoid monoid)
+            throws InterruptedException {
+        Objects.checkFromToIndex(from, to, values.length);
+        final int[] partial = new int[chunks(threads, to - from)];
+        split(threads, from, to, (chunk, left, right) -> {
+            int result = monoid.identity;
+            for (int i = left; i < right; i++) {
+                result = monoid.operator.applyAsInt(result, lift.applyAsInt(values[i]));
+            }
+            partial[chunk] = result;
+        });
+        int result = monoid.identity;
+        for (int value : partial) {
+            result = monoid.operator.applyAsInt(result, value);
+        }
+        return result;
+    }
+
+    public int reduce(int threads, int[] values, int from, int to, IntMonoid monoid) throws InterruptedException {
+        return mapReduce(threads, values, from, to, IntUnaryOperator.identity(), monoid);
+    }
+
+    public int reduce(int threads, int[] values, IntMonoid monoid) throws InterruptedException {
+        return reduce(threads, values, 0, values.length, monoid);
+    }
+
+    public long mapReduce(int threads, long[] values, int from, int to, LongUnaryOperator lift, LongMonoid monoid)
+            throws InterruptedException {
+        Objects.checkFromToIndex(from, to, values.length);
+        final long[] partial = new long[chunks(threads, to - from)];
+        split(threads, from, to, (chunk, left, right) -> {
+            long result = monoid.identity;
+            for (int i = left; i < right; i++) {
+                result = monoid.operator.applyAsLong(result, lift.applyAsLong(values[i]));
+            }
+            partial[chunk] = result;
+        });
+        long result = monoid.identity;
+        for (long value : partial) {
+            result = monoid.operator.applyAsLong(result, value);
+        }
+        return result;
+    }
+
+    public long reduce(int threads, long[] values, int from, int to, LongMonoid monoid) throws InterruptedException {
+        return mapReduce(threads, values, from, to, LongUnaryOperator.identity(), monoid);
+    }
+
+    public long reduce(int threads, long[] values, LongMonoid monoid) throws InterruptedException {
+        return reduce(threads, values, 0, values.length, monoid);
+    }
+
+    public double mapReduce(int threads, double[] values, int from, int to, DoubleUnaryOperator lift, DoubleMonoid monoid)
+            throws InterruptedException {
+        Objects.checkFromToIndex(from, to, values.length);
+        final double[] partial = new double[chunks(threads, to - from)];
+        split(threads, from, to, (chunk, left, right) -> {
+            double result = monoid.identity;
+            for (int i = left; i < right; i++) {
+                result = monoid.operator.applyAsDouble(result, lift.applyAsDouble(values[i]));
+            }
+            partial[chunk] = result;
+        });
+        double result = monoid.identity;
+        for (double value : partial) {
+            result = monoid.operator.applyAsDouble(result, value);
+        }
+        return result;
+    }
+
+    public double reduce(int threads, double[] values, int from, int to, DoubleMonoid monoid) throws InterruptedException {
+        return mapReduce(threads, values, from, to, DoubleUnaryOperator.identity(), monoid);
+    }
+
+    public double reduce(int threads, double[] values, DoubleMonoid monoid) throws InterruptedException {
+        return reduce(threads, values, 0, values.length, monoid);
+    }
+}
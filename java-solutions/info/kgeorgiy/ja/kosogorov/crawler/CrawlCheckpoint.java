@@ -0,0 +1,372 @@
+package info.kgeorgiy.ja.kosogorov.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Append-only log of a layered crawl: a header with the crawl arguments, then a record for every
+ * url taken into the frontier and for every url finished. Crawl threads only enqueue records, a single
+ * writer thread appends them and forces the file every {@value #FLUSH_MILLIS} milliseconds, so a crash
+ * loses at most the last moments of work. When the log grows, records of urls taken into the frontier
+ * and finished since are compacted away.
+ * <p>
+ * A url is logged as finished only after the urls found on it, so replaying any prefix of the log
+ * gives a consistent frontier.
+ */
+public class CrawlCheckpoint implements Closeable {
+    private static final int MAGIC = 0x4352_574c;
+    private static final int VERSION = 1;
+    private static final byte VISIT = 1;
+    private static final byte DONE = 2;
+    private static final long FLUSH_MILLIS = 1000;
+    private static final long COMPACT_BYTES = 64 << 20;
+    // 32 MiB of heap; beyond this, some visits of finished urls survive compaction, which costs space but not correctness
+    private static final int MAX_FINGERPRINTS = 1 << 22;
+
+    private final Path file;
+    private final State header;
+    private final BlockingQueue<Record> records = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private DataOutputStream output;
+    private FileChannel channel;
+    private long compactedSize;
+    private long finished;
+    private volatile IOException error;
+
+    /**
+     * Crawl arguments and progress read from a log.
+     */
+    public static class State {
+        private final String start;
+        private final int depth;
+        private final List<String> hosts;
+        private final Map<String, Integer> pending = new LinkedHashMap<>();
+        private long finished;
+
+        private State(final String start, final int depth, final List<String> hosts) {
+            this.start = start;
+            this.depth = depth;
+            this.hosts = hosts;
+        }
+
+        public String getStart() {
+            return start;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public List<String> getHosts() {
+            return hosts;
+        }
+
+        /**
+         * Urls taken into the frontier but not finished, with their distance from the start.
+         */
+        public Map<String, Integer> getPending() {
+            return Collections.unmodifiableMap(pending);
+        }
+
+        public long getFinished() {
+            return finished;
+        }
+    }
+
+    private static class Record {
+        private static final Record END = new Record((byte) 0, null, 0, null);
+
+        private final byte type;
+        private final String url;
+        private final int distance;
+        private final String error;
+
+        private Record(final byte type, final String url, final int distance, final String error) {
+            this.type = type;
+            this.url = url;
+            this.distance = distance;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Sorted fingerprints of finished urls, only kept while compacting.
+     */
+    private static class Fingerprints {
+        private final long[] values;
+        private int size;
+
+        private Fingerprints(final int capacity) {
+            this.values = new long[capacity];
+        }
+
+        private boolean contains(final long fingerprint) {
+            return Arrays.binarySearch(values, 0, size, fingerprint) >= 0;
+        }
+    }
+
+    private interface RecordHandler {
+        void handle(State state, Record record) throws IOException;
+    }
+
+    private CrawlCheckpoint(final Path file, final State header, final long finished, final boolean compact)
+            throws IOException {
+        this.file = file;
+        this.header = header;
+        this.finished = finished;
+        rewrite(compact);
+        this.writer = new Thread(this::write, "crawl-checkpoint");
+        writer.start();
+    }
+
+    /**
+     * Starts a new log at {@code file}, replacing an existing one.
+     */
+    public static CrawlCheckpoint create(final Path file, final String start, final int depth, final List<String> hosts)
+            throws IOException {
+        return new CrawlCheckpoint(file, new State(start, depth, hosts), 0, false);
+    }
+
+    /**
+     * Compacts the log at {@code file}, previously {@link #read} as {@code state}, and continues appending to it.
+     */
+    public static CrawlCheckpoint open(final Path file, final State state) throws IOException {
+        return new CrawlCheckpoint(file, new State(state.start, state.depth, state.hosts), state.finished, true);
+    }
+
+    /**
+     * Reads crawl state as of the last complete record of the log. Finished urls are passed to {@code onFinished}
+     * with the error message, {@code null} for successfully downloaded ones, and are not kept in the state.
+     */
+    public static State read(final Path file, final BiConsumer<String, String> onFinished) throws IOException {
+        return scan(file, (state, record) -> {
+            if (record.type == VISIT) {
+                state.pending.put(record.url, record.distance);
+            } else {
+                state.pending.remove(record.url);
+                state.finished++;
+                onFinished.accept(record.url, record.error);
+            }
+        });
+    }
+
+    private static State scan(final Path file, final RecordHandler handler) throws IOException {
+        final long size = Files.size(file);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Not a crawl checkpoint file: " + file);
+            }
+            final String start = readString(input, size);
+            final int depth = input.readInt();
+            final int hostCount = input.readInt();
+            List<String> hosts = null;
+            if (hostCount >= 0) {
+                hosts = new ArrayList<>();
+                for (int i = 0; i < hostCount; i++) {
+                    hosts.add(readString(input, size));
+                }
+            }
+            final State state = new State(start, depth, hosts);
+            try {
+                while (true) {
+                    final byte type = input.readByte();
+                    final String url = readString(input, size);
+                    if (type == VISIT) {
+                        handler.handle(state, new Record(VISIT, url, input.readInt(), null));
+                    } else if (type == DONE) {
+                        final String error = input.readBoolean() ? readString(input, size) : null;
+                        handler.handle(state, new Record(DONE, url, 0, error));
+                    } else {
+                        throw new IOException("Corrupted crawl checkpoint file: " + file);
+                    }
+                }
+            } catch (final EOFException ignored) {
+                // the last record may be cut by a crash
+            }
+            return state;
+        } catch (final EOFException e) {
+            throw new IOException("Truncated crawl checkpoint header: " + file, e);
+        }
+    }
+
+    private static String readString(final DataInputStream input, final long limit) throws IOException {
+        final int length = input.readInt();
+        if (length < 0 || length > limit) {
+            throw new IOException("Corrupted crawl checkpoint file");
+        }
+        final byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(final DataOutputStream output, final String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    public void visited(final String url, final int distance) {
+        add(new Record(VISIT, url, distance, null));
+    }
+
+    /**
+     * @param error failure of the url, {@code null} if it was downloaded successfully
+     */
+    public void finished(final String url, final IOException error) {
+        add(new Record(DONE, url, 0, error == null ? null : String.valueOf(error.getMessage())));
+    }
+
+    private void add(final Record record) {
+        // after a write error, records are only dropped and the error is reported by close
+        if (error == null) {
+            records.add(record);
+        }
+    }
+
+    private void write() {
+        long flushed = System.nanoTime();
+        try {
+            while (true) {
+                final Record record = records.poll(FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                if (record == Record.END) {
+                    break;
+                }
+                if (record != null) {
+                    writeRecord(output, record);
+                    if (record.type == DONE) {
+                        finished++;
+                    }
+                }
+                if (record == null || System.nanoTime() - flushed > TimeUnit.MILLISECONDS.toNanos(FLUSH_MILLIS)) {
+                    flush();
+                    flushed = System.nanoTime();
+                    if (channel.size() > Math.max(COMPACT_BYTES, 2 * compactedSize)) {
+                        output.close();
+                        rewrite(true);
+                    }
+                }
+            }
+            flush();
+            output.close();
+        } catch (final IOException e) {
+            error = e;
+            records.clear();
+        } catch (final InterruptedException ignored) {
+        }
+    }
+
+    private static void writeRecord(final DataOutputStream output, final Record record) throws IOException {
+        output.writeByte(record.type);
+        writeString(output, record.url);
+        if (record.type == VISIT) {
+            output.writeInt(record.distance);
+        } else {
+            output.writeBoolean(record.error != null);
+            if (record.error != null) {
+                writeString(output, record.error);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        output.flush();
+        channel.force(false);
+    }
+
+    private Fingerprints finishedFingerprints() throws IOException {
+        final Fingerprints done = new Fingerprints((int) Math.min(finished, MAX_FINGERPRINTS));
+        scan(file, (state, record) -> {
+            if (record.type == DONE && done.size < done.values.length) {
+                done.values[done.size++] = FingerprintSet.fingerprint(record.url);
+            }
+        });
+        Arrays.sort(done.values, 0, done.size);
+        return done;
+    }
+
+    /**
+     * Writes a fresh log next to {@code file}, forces it to disk and atomically moves it over.
+     * When compacting, records of the current log are copied in order, except visits of finished urls.
+     */
+    private void rewrite(final boolean compact) throws IOException {
+        final Fingerprints done = compact ? finishedFingerprints() : null;
+        final Path parent = file.toAbsolutePath().getParent();
+        final Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                final DataOutputStream compacted = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(tempChannel)));
+                compacted.writeInt(MAGIC);
+                compacted.writeInt(VERSION);
+                writeString(compacted, header.start);
+                compacted.writeInt(header.depth);
+                compacted.writeInt(header.hosts == null ? -1 : header.hosts.size());
+                if (header.hosts != null) {
+                    for (final String host : header.hosts) {
+                        writeString(compacted, host);
+                    }
+                }
+                if (compact) {
+                    scan(file, (state, record) -> {
+                        if (record.type == DONE || !done.contains(FingerprintSet.fingerprint(record.url))) {
+                            writeRecord(compacted, record);
+                        }
+                    });
+                }
+                compacted.flush();
+                // a crash right after the move must not leave a log that is not fully on disk
+                tempChannel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        compactedSize = channel.size();
+    }
+
+    /**
+     * Writes all enqueued records and closes the log.
+     */
+    @Override
+    public void close() throws IOException {
+        records.add(Record.END);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
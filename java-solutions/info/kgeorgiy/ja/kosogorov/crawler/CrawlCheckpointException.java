@@ -0,0 +1,28 @@
+package info.kgeorgiy.ja.kosogorov.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Result;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Thrown when a checkpointed crawl finished but its log could not be written completely,
+ * so the crawl cannot be resumed from it. The result of the crawl is still available.
+ */
+public class CrawlCheckpointException extends UncheckedIOException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Result result;
+
+    public CrawlCheckpointException(final String message, final IOException cause, final Result result) {
+        super(message, cause);
+        this.result = result;
+    }
+
+    /**
+     * Result of the finished crawl.
+     */
+    public Result getResult() {
+        return result;
+    }
+}
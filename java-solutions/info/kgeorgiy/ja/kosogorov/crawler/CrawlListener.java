@@ -0,0 +1,21 @@
+package info.kgeorgiy.ja.kosogorov.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Document;
+
+import java.io.IOException;
+
+/**
+ * Receives pages of a crawl as they are processed.
+ */
+public interface CrawlListener {
+    /**
+     * Called once {@code url} is downloaded.
+     */
+    void downloaded(String url, Document document);
+
+    /**
+     * Called when downloading {@code url} or extracting its links failed.
+     * A failed extraction comes after {@link #downloaded} for the same url.
+     */
+    void failed(String url, IOException exception);
+}
@@ -0,0 +1,248 @@
+package info.kgeorgiy.ja.kosogorov.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Document;
+import info.kgeorgiy.java.advanced.crawler.Downloader;
+import info.kgeorgiy.java.advanced.crawler.Result;
+import info.kgeorgiy.java.advanced.crawler.URLUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Crawls of a generated web through a {@link Downloader} that sleeps instead of doing network requests.
+ * Every crawl is checked against a sequential breadth-first crawl of the same web before its time is printed.
+ */
+public class CrawlerBenchmark {
+    private static final String USAGE = "Expected arguments pipelined|hosts|threads";
+    private static final int PAGES = 200_000;
+    private static final int HOSTS = 13;
+    private static final long SEED = 3;
+    private static final int DEPTH = 10;
+
+    /**
+     * Page {@code i} lives on host {@code i % hosts}, or on host 0 if {@code i} is a multiple of {@code hotEvery},
+     * and links to up to five pseudo-random pages.
+     * A download sleeps {@code latency} milliseconds, or {@code slowLatency} for one page in twenty.
+     * Some pages fail to download and some fail to extract links, at fixed indices.
+     */
+    private static class FakeWeb implements Downloader {
+        private final int hosts;
+        private final int hotEvery;
+        private final long latency;
+        private final long slowLatency;
+
+        private FakeWeb(int hosts, int hotEvery, long latency, long slowLatency) {
+            this.hosts = hosts;
+            this.hotEvery = hotEvery;
+            this.latency = latency;
+            this.slowLatency = slowLatency;
+        }
+
+        private String url(int page) {
+            return "http://h" + (hotEvery > 0 && page % hotEvery == 0 ? 0 : page % hosts) + ".test/p" + page;
+        }
+
+        private static int page(String url) {
+            return Integer.parseInt(url.substring(url.lastIndexOf('p') + 1));
+        }
+
+        private List<String> links(int page) {
+            final Random random = new Random(SEED * 31 + page);
+            final List<String> links = new ArrayList<>();
+            for (int i = random.nextInt(6); i > 0; i--) {
+                links.add(url(random.nextInt(PAGES)));
+            }
+            return links;
+        }
+
+        private static boolean failsDownload(int page) {
+            return page % 17 == 5;
+        }
+
+        private static boolean failsExtract(int page) {
+            return page % 23 == 7;
+        }
+
+        private long delay(int page) {
+            return new Random(page * 7L + SEED).nextDouble() < 0.95 ? latency : slowLatency;
+        }
+
+        @Override
+        public Document download(String url) throws IOException {
+            final int page = page(url);
+            try {
+                Thread.sleep(delay(page));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failsDownload(page)) {
+                throw new IOException("Cannot download " + url);
+            }
+            return () -> {
+                if (failsExtract(page)) {
+                    throw new IOException("Cannot extract links of " + url);
+                }
+                return links(page);
+            };
+        }
+
+        /**
+         * First page that downloads and has five links, so that the crawl is not trivially small.
+         */
+        private String start() {
+            int page = 0;
+            while (failsDownload(page) || failsExtract(page) || links(page).size() < 5) {
+                page++;
+            }
+            return url(page);
+        }
+
+        private Result reference(String start, int depth) {
+            final Set<String> visited = new LinkedHashSet<>(List.of(start));
+            final Map<String, IOException> errors = new HashMap<>();
+            List<String> layer = List.of(start);
+            for (int distance = 0; distance < depth; distance++) {
+                final List<String> next = new ArrayList<>();
+                for (String url : layer) {
+                    final int page = page(url);
+                    if (failsDownload(page)) {
+                        errors.put(url, new IOException());
+                    } else if (distance < depth - 1) {
+                        if (failsExtract(page)) {
+                            errors.put(url, new IOException());
+                        } else {
+                            for (String link : links(page)) {
+                                if (visited.add(link)) {
+                                    next.add(link);
+                                }
+                            }
+                        }
+                    }
+                }
+                layer = next;
+            }
+            visited.removeAll(errors.keySet());
+            return new Result(new ArrayList<>(visited), errors);
+        }
+    }
+
+    /**
+     * Limits downloads per host by blocking the calling thread on a host semaphore, as {@link WebCrawler}
+     * did before it queued downloads per host.
+     */
+    private static class HostBlockingDownloader implements Downloader {
+        private final Downloader downloader;
+        private final int perHost;
+        private final ConcurrentMap<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+        private HostBlockingDownloader(Downloader downloader, int perHost) {
+            this.downloader = downloader;
+            this.perHost = perHost;
+        }
+
+        @Override
+        public Document download(String url) throws IOException {
+            final Semaphore semaphore = hosts.computeIfAbsent(URLUtils.getHost(url), host -> new Semaphore(perHost));
+            semaphore.acquireUninterruptibly();
+            try {
+                return downloader.download(url);
+            } finally {
+                semaphore.release();
+            }
+        }
+    }
+
+    private static void run(String name, FakeWeb web, WebCrawler crawler) {
+        final String start = web.start();
+        final Result expected = web.reference(start, DEPTH);
+        try (crawler) {
+            final long begin = System.nanoTime();
+            final Result result = crawler.download(start, DEPTH);
+            final long millis = (System.nanoTime() - begin) / 1_000_000;
+            if (!new HashSet<>(result.getDownloaded()).equals(new HashSet<>(expected.getDownloaded()))
+                    || !result.getErrors().keySet().equals(expected.getErrors().keySet())) {
+                throw new AssertionError(name + ": result differs from the breadth-first crawl");
+            }
+            System.out.printf(Locale.ROOT, "%-32s %7d ms %7d pages%n", name, millis,
+                    result.getDownloaded().size() + result.getErrors().size());
+        }
+    }
+
+    /**
+     * Layered and pipelined crawls with 64 downloaders, where one page in twenty takes 50 times longer.
+     */
+    private static void pipelined() {
+        final FakeWeb web = new FakeWeb(HOSTS, 0, 5, 250);
+        for (WebCrawler.Mode mode : WebCrawler.Mode.values()) {
+            run(mode.name().toLowerCase(), web,
+                    new WebCrawler(web, 64, 4, 64, FrontierLimits.UNBOUNDED, mode));
+        }
+    }
+
+    /**
+     * One host holds an eighth of the pages and 199 cold hosts share the rest, with 8 downloaders and one
+     * download per host. Host limits are enforced either by the crawler's host queues or by blocking
+     * downloader threads on host semaphores.
+     */
+    private static void hosts() {
+        final FakeWeb web = new FakeWeb(200, 8, 5, 250);
+        for (WebCrawler.Mode mode : WebCrawler.Mode.values()) {
+            final String name = mode.name().toLowerCase();
+            run(name + ", host queues", web, new WebCrawler(web, 8, 4, 1, FrontierLimits.UNBOUNDED, mode));
+            run(name + ", blocking semaphores", web, new WebCrawler(new HostBlockingDownloader(web, 1),
+                    8, 4, Integer.MAX_VALUE, FrontierLimits.UNBOUNDED, mode));
+        }
+    }
+
+    /**
+     * Virtual thread factory when the runtime has one, platform threads otherwise.
+     */
+    private static ThreadFactory downloadThreads() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.defaultThreadFactory();
+        }
+    }
+
+    /**
+     * Pipelined crawls with 20 ms latency and one page in twenty taking a second, four downloads per host,
+     * on a pool of 16 downloaders and with a thread per download.
+     */
+    private static void threads() {
+        final FakeWeb web = new FakeWeb(HOSTS, 0, 20, 1000);
+        final ThreadFactory factory = downloadThreads();
+        System.out.println("download threads: " + factory.getClass().getName());
+        run("16 pooled downloaders", web, new WebCrawler(web, 16, 4, 4,
+                FrontierLimits.UNBOUNDED, WebCrawler.Mode.PIPELINED));
+        run("thread per download", web, new WebCrawler(web, factory, 0, 4, 4,
+                FrontierLimits.UNBOUNDED, WebCrawler.Mode.PIPELINED));
+    }
+
+    public static void main(String[] args) {
+        if (args == null || args.length != 1 || args[0] == null) {
+            System.err.println(USAGE);
+            return;
+        }
+        switch (args[0]) {
+            case "pipelined" -> pipelined();
+            case "hosts" -> hosts();
+            case "threads" -> threads();
+            default -> System.err.println(USAGE);
+        }
+    }
+}
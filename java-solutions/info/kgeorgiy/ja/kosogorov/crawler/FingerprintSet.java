@@ -0,0 +1,126 @@
+package info.kgeorgiy.ja.kosogorov.crawler;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Visited set of 64-bit url fingerprints in a fixed off-heap open-addressing table, so memory does not
+ * grow with the crawl. Distinct urls with equal fingerprints are treated as one, which is negligible
+ * below billions of urls.
+ * <p>
+ * Every url also passes an optional Bloom filter. Once the table is full, the filter alone decides,
+ * so the crawl goes on at the cost of dropping a few urls on false positives.
+ * Without it, all new urls are dropped when the table is full.
+ */
+public class FingerprintSet implements VisitedSet {
+    private static final VarHandle SLOTS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final int MAX_SLOTS = 1 << 27;
+    private static final int BLOOM_HASHES = 4;
+
+    private final ByteBuffer slots;
+    private final int mask;
+    private final int limit;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLongArray bloom;
+    private final AtomicBoolean reportedFull = new AtomicBoolean();
+
+    /**
+     * @param capacity number of fingerprints kept exactly, the table takes 8 bytes per slot at most 75% full
+     * @param bloomBits size of the Bloom filter in bits, non-positive for none
+     */
+    public FingerprintSet(long capacity, long bloomBits) {
+        final long slotCount = Long.highestOneBit(Math.max(2, capacity * 4 / 3)) << 1;
+        if (slotCount > MAX_SLOTS) {
+            throw new IllegalArgumentException("Visited set capacity is too large: " + capacity);
+        }
+        this.slots = ByteBuffer.allocateDirect((int) slotCount * Long.BYTES).order(ByteOrder.nativeOrder());
+        this.mask = (int) slotCount - 1;
+        this.limit = (int) Math.min(capacity, slotCount * 3 / 4);
+        this.bloom = bloomBits > 0 ? new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, (bloomBits + 63) / 64)) : null;
+    }
+
+    static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash = (hash ^ url.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        // zero marks an empty slot
+        return hash == 0 ? 1 : hash;
+    }
+
+    @Override
+    public boolean add(String url) {
+        final long fingerprint = fingerprint(url);
+        final boolean added = bloom != null && addToBloom(fingerprint);
+        if (size.get() >= limit) {
+            if (bloom != null) {
+                return added;
+            }
+            if (!contains(fingerprint) && reportedFull.compareAndSet(false, true)) {
+                System.err.println("Visited set is full, new urls are dropped");
+            }
+            return false;
+        }
+        return insert(fingerprint);
+    }
+
+    private boolean addToBloom(long fingerprint) {
+        final long bits = (long) bloom.length() * 64;
+        final long step = (fingerprint >>> 32) | 1;
+        boolean added = false;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            final long bit = Math.floorMod(fingerprint + i * step, bits);
+            final int word = (int) (bit >>> 6);
+            final long flag = 1L << bit;
+            long value;
+            while (((value = bloom.get(word)) & flag) == 0) {
+                if (bloom.compareAndSet(word, value, value | flag)) {
+                    added = true;
+                    break;
+                }
+            }
+        }
+        return added;
+    }
+
+    private boolean contains(long fingerprint) {
+        for (int i = (int) fingerprint & mask; ; i = (i + 1) & mask) {
+            final long slot = (long) SLOTS.getVolatile(slots, i * Long.BYTES);
+            if (slot == 0) {
+                return false;
+            }
+            if (slot == fingerprint) {
+                return true;
+            }
+        }
+    }
+
+    private boolean insert(long fingerprint) {
+        for (int i = (int) fingerprint & mask; ; i = (i + 1) & mask) {
+            final long slot = (long) SLOTS.getVolatile(slots, i * Long.BYTES);
+            if (slot == fingerprint) {
+                return false;
+            }
+            if (slot == 0) {
+                final long witness = (long) SLOTS.compareAndExchange(slots, i * Long.BYTES, 0L, fingerprint);
+                if (witness == 0) {
+                    size.incrementAndGet();
+                    return true;
+                }
+                if (witness == fingerprint) {
+                    return false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package info.kgeorgiy.ja.kosogorov.crawler;
+
+import java.nio.file.Path;
+
+/**
+ * Memory bounds of a crawl frontier: urls of a layer beyond {@code layerMemory} are spilled to files
+ * in {@code spillDirectory}, and visited urls are kept as fingerprints in a {@link FingerprintSet}.
+ */
+public class FrontierLimits {
+    /**
+     * Keeps layers and visited urls fully on the heap.
+     */
+    public static final FrontierLimits UNBOUNDED = new FrontierLimits(Integer.MAX_VALUE, 0, 0, null);
+
+    private final int layerMemory;
+    private final long visitedCapacity;
+    private final long bloomBits;
+    private final Path spillDirectory;
+
+    /**
+     * @param layerMemory urls of a layer kept on the heap
+     * @param visitedCapacity urls remembered exactly, non-positive to keep url strings on the heap instead
+     * @param bloomBits size of the Bloom filter used once the visited set is full, non-positive for none
+     * @param spillDirectory directory for spill files, {@code null} for the default temporary directory
+     */
+    public FrontierLimits(int layerMemory, long visitedCapacity, long bloomBits, Path spillDirectory) {
+        this.layerMemory = layerMemory;
+        this.visitedCapacity = visitedCapacity;
+        this.bloomBits = bloomBits;
+        this.spillDirectory = spillDirectory;
+    }
+
+    SpillQueue newLayer() {
+        return new SpillQueue(layerMemory, spillDirectory == null ? Path.of(System.getProperty("java.io.tmpdir")) : spillDirectory);
+    }
+
+    VisitedSet newVisitedSet() {
+        return visitedCapacity > 0 ? new FingerprintSet(visitedCapacity, bloomBits) : VisitedSet.exact();
+    }
+}
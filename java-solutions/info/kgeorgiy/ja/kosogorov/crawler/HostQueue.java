@@ -0,0 +1,151 @@
+package info.kgeorgiy.ja.kosogorov.crawler;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tasks sharing a concurrency limit, such as downloads of one host. A task is handed to the executor
+ * only while fewer than {@code limit} of them are running, otherwise it waits here,
+ * so executor threads never wait for a busy host.
+ * <p>
+ * With {@link Politeness}, a task also needs a token of the host's bucket and must not fall into a backoff
+ * pause. Tasks waiting only for time are started by a single {@link TimerWheel} wake-up per queue.
+ */
+public class HostQueue implements Executor {
+    private final int limit;
+    private final Executor executor;
+    private final Politeness politeness;
+    private final TimerWheel wheel;
+    private final Deque<Runnable> pending = new ArrayDeque<>();
+    private int active;
+    private double tokens;
+    private long refilled = System.nanoTime();
+    private boolean paused;
+    private long pausedUntil;
+    private int failures;
+    private boolean wakeScheduled;
+
+    public HostQueue(final int limit, final Executor executor) {
+        this(limit, executor, Politeness.NONE, null);
+    }
+
+    public HostQueue(final int limit, final Executor executor, final Politeness politeness, final TimerWheel wheel) {
+        this.limit = limit;
+        this.executor = executor;
+        this.politeness = politeness;
+        this.wheel = wheel;
+        this.tokens = politeness.getBurst();
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        synchronized (this) {
+            pending.addLast(task);
+        }
+        start();
+    }
+
+    /**
+     * Runs {@code task} again ahead of other waiting tasks, once the pause set by {@link #failed()} is over.
+     */
+    public void retry(final Runnable task) {
+        synchronized (this) {
+            pending.addFirst(task);
+        }
+        start();
+    }
+
+    /**
+     * Ends the backoff of the host.
+     */
+    public synchronized void succeeded() {
+        failures = 0;
+        paused = false;
+    }
+
+    /**
+     * Pauses the host, each consecutive failure doubling the pause.
+     */
+    public synchronized void failed() {
+        final long pause = politeness.getBackoffNanos(failures++);
+        if (pause > 0) {
+            paused = true;
+            pausedUntil = System.nanoTime() + pause;
+        }
+    }
+
+    private void start() {
+        Runnable task;
+        while ((task = take()) != null) {
+            dispatch(task);
+        }
+    }
+
+    /**
+     * Takes a waiting task if it may start now, counting it as active.
+     */
+    private synchronized Runnable take() {
+        if (active >= limit || pending.isEmpty()) {
+            return null;
+        }
+        final long now = System.nanoTime();
+        final long wait = Math.max(paused ? pausedUntil - now : 0, tokenWait(now));
+        if (wait > 0) {
+            if (!wakeScheduled) {
+                wheel.schedule(wait, TimeUnit.NANOSECONDS, this::wake);
+                wakeScheduled = true;
+            }
+            return null;
+        }
+        if (politeness.getRate() > 0) {
+            tokens--;
+        }
+        active++;
+        return pending.pollFirst();
+    }
+
+    private long tokenWait(final long now) {
+        final double rate = politeness.getRate();
+        if (rate <= 0) {
+            return 0;
+        }
+        tokens = Math.min(politeness.getBurst(), tokens + (now - refilled) * rate / TimeUnit.SECONDS.toNanos(1));
+        refilled = now;
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private void wake() {
+        synchronized (this) {
+            wakeScheduled = false;
+        }
+        start();
+    }
+
+    private void dispatch(final Runnable first) {
+        // the thread that frees a slot takes the next task of the host at once, instead of queueing it
+        // behind other hosts while the host stays idle
+        executor.execute(() -> {
+            Runnable task = first;
+            try {
+                while (task != null) {
+                    task.run();
+                    task = finish();
+                }
+            } finally {
+                if (task != null) {
+                    synchronized (this) {
+                        active--;
+                    }
+                    start();
+                }
+            }
+        });
+    }
+
+    private synchronized Runnable finish() {
+        active--;
+        return take();
+    }
+}
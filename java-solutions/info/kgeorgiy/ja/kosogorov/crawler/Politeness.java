@@ -0,0 +1,59 @@
+package info.kgeorgiy.ja.kosogorov.crawler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-host request pacing: a token bucket of {@code burst} requests refilled at {@code rate} per second,
+ * and a pause after every failed request, doubling from {@code backoff} up to {@code maxBackoff} milliseconds
+ * while failures go on. A failed download is retried up to {@code retries} times.
+ */
+public class Politeness {
+    /**
+     * No rate limit, no backoff and no retries.
+     */
+    public static final Politeness NONE = new Politeness(0, 1, 0, 0, 0);
+
+    private final double rate;
+    private final int burst;
+    private final long backoff;
+    private final long maxBackoff;
+    private final int retries;
+
+    /**
+     * @param rate requests per second per host, non-positive for no limit
+     * @param burst requests a host may get at once after being idle
+     * @param backoff first pause after a failure in milliseconds, non-positive for none
+     * @param maxBackoff longest pause in milliseconds
+     * @param retries attempts after the first failed one
+     */
+    public Politeness(final double rate, final int burst, final long backoff, final long maxBackoff, final int retries) {
+        this.rate = rate;
+        this.burst = Math.max(1, burst);
+        this.backoff = backoff;
+        this.maxBackoff = Math.max(backoff, maxBackoff);
+        this.retries = retries;
+    }
+
+    boolean isLimited() {
+        return rate > 0 || backoff > 0;
+    }
+
+    double getRate() {
+        return rate;
+    }
+
+    int getBurst() {
+        return burst;
+    }
+
+    long getBackoffNanos(final int failures) {
+        if (backoff <= 0) {
+            return 0;
+        }
+        return TimeUnit.MILLISECONDS.toNanos(Math.min(maxBackoff, backoff << Math.min(failures, 20)));
+    }
+
+    int getRetries() {
+        return retries;
+    }
+}
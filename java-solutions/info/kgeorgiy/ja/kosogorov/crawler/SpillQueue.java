@@ -0,0 +1,98 @@
+package info.kgeorgiy.ja.kosogorov.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Queue of urls keeping at most {@code memoryLimit} of them on the heap and appending the rest to a temporary file.
+ * Urls are polled from memory first, then from the file. Writing and reading must not overlap:
+ * once {@link #poll()} is called, no more urls may be added.
+ */
+public class SpillQueue implements Closeable {
+    private final int memoryLimit;
+    private final Path directory;
+    private final Queue<String> memory = new ArrayDeque<>();
+    private Path file;
+    private DataOutputStream output;
+    private DataInputStream input;
+    private long spilled;
+
+    public SpillQueue(int memoryLimit, Path directory) {
+        this.memoryLimit = memoryLimit;
+        this.directory = directory;
+    }
+
+    public synchronized void add(String url) {
+        if (memory.size() < memoryLimit) {
+            memory.add(url);
+            return;
+        }
+        try {
+            if (output == null) {
+                file = Files.createTempFile(directory, "frontier", ".spill");
+                output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+            }
+            final byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            spilled++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot spill crawl frontier", e);
+        }
+    }
+
+    public synchronized String poll() {
+        final String url = memory.poll();
+        if (url != null || spilled == 0) {
+            return url;
+        }
+        try {
+            if (input == null) {
+                output.close();
+                input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            }
+            final byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            spilled--;
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (EOFException e) {
+            throw new UncheckedIOException("Truncated crawl frontier file: " + file, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read crawl frontier", e);
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return memory.isEmpty() && spilled == 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            try {
+                if (input != null) {
+                    input.close();
+                } else if (output != null) {
+                    output.close();
+                }
+            } finally {
+                if (file != null) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete crawl frontier file: " + file, e);
+        }
+    }
+}
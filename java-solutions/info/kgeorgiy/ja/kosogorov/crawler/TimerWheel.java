@@ -0,0 +1,119 @@
+package info.kgeorgiy.ja.kosogorov.crawler;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel driven by one daemon thread, so any number of pending delays costs a single thread.
+ * A task fires on the first tick at or after its deadline and runs on the wheel thread, so it must be short.
+ * While nothing is scheduled, the thread parks instead of ticking.
+ */
+public class TimerWheel implements AutoCloseable {
+    private final long tickNanos;
+    private final List<List<Timeout>> slots;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final long start = System.nanoTime();
+    private final Thread thread;
+    private boolean closed;
+
+    private static class Timeout {
+        private final long deadline;
+        private final Runnable task;
+
+        private Timeout(final long deadline, final Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+    }
+
+    public TimerWheel(final long tick, final TimeUnit unit, final int size) {
+        this.tickNanos = unit.toNanos(tick);
+        this.slots = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.thread = new Thread(this::run, "timer-wheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @throws IllegalStateException if the wheel is closed, since the task would never run
+     */
+    public void schedule(final long delay, final TimeUnit unit, final Runnable task) {
+        final long deadline = System.nanoTime() - start + unit.toNanos(delay);
+        final Timeout timeout = new Timeout((deadline + tickNanos - 1) / tickNanos, task);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Timer wheel is closed");
+            }
+            incoming.add(timeout);
+        }
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        long tick = 0;
+        // timeouts in the slots, only touched by this thread
+        int scheduled = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            if (scheduled == 0 && incoming.isEmpty()) {
+                LockSupport.park(this);
+                // the slots are empty, so the ticks slept through need not be visited
+                tick = Math.max(tick, (System.nanoTime() - start) / tickNanos);
+                continue;
+            }
+            tick++;
+            long wait;
+            while ((wait = start + tick * tickNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, wait);
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            }
+            // only this thread touches the slots, others hand timeouts over through the incoming queue
+            Timeout timeout;
+            while ((timeout = incoming.poll()) != null) {
+                slots.get((int) (Math.max(timeout.deadline, tick) % slots.size())).add(timeout);
+                scheduled++;
+            }
+            final Iterator<Timeout> slot = slots.get((int) (tick % slots.size())).iterator();
+            while (slot.hasNext()) {
+                final Timeout next = slot.next();
+                if (next.deadline <= tick) {
+                    slot.remove();
+                    scheduled--;
+                    try {
+                        next.task.run();
+                    } catch (final RuntimeException e) {
+                        System.err.println("Timer task failed: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        thread.interrupt();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package info.kgeorgiy.ja.kosogorov.crawler;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe set of URLs already scheduled by a crawl.
+ */
+public interface VisitedSet {
+    /**
+     * Marks {@code url} as visited.
+     * @return {@code true} if the url was not visited before and should be crawled
+     */
+    boolean add(String url);
+
+    /**
+     * Exact set keeping every url string on the heap.
+     */
+    static VisitedSet exact() {
+        final Set<String> urls = ConcurrentHashMap.newKeySet();
+        return urls::add;
+    }
+}
@@ -3,29 +3,192 @@ package info.kgeorgiy.ja.kosogorov.crawler;
 import info.kgeorgiy.java.advanced.crawler.*;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class WebCrawler implements AdvancedCrawler {
     private final Downloader downloader;
     private final int perHost;
     private final ExecutorService downloadService;
     private final ExecutorService extractService;
-    private final Map<String, Semaphore> hostsSemaphores;
+    private final Executor downloads;
+    private final Map<String, HostQueue> hostQueues;
+    private final FrontierLimits limits;
+    private final Mode mode;
+    private final Politeness politeness;
+    private final TimerWheel wheel;
     private static final long TIME = 60000;
+    private static final long WHEEL_TICK = 5;
+    private static final int WHEEL_SIZE = 512;
+    // pages of a layer in flight at once, the rest of the layer waits in its spill queue
+    private static final int LAYER_WINDOW = 4096;
+
+    /**
+     * How downloads of different depths are ordered.
+     */
+    public enum Mode {
+        /**
+         * Layer by layer: depth {@code k + 1} starts once every page of depth {@code k} is done.
+         * Frontier memory follows {@link FrontierLimits}.
+         */
+        LAYERED,
+        /**
+         * Every page is scheduled as soon as a link to it is extracted, and its depth is tracked per url.
+         * Gives the same result as {@link #LAYERED}, but keeps state of every page on the heap until the crawl ends.
+         */
+        PIPELINED
+    }
 
     public WebCrawler(final Downloader downloader, final int downloaders, final int extractors, final int perHost) {
+        this(downloader, downloaders, extractors, perHost, FrontierLimits.UNBOUNDED);
+    }
+
+    public WebCrawler(
+            final Downloader downloader,
+            final int downloaders,
+            final int extractors,
+            final int perHost,
+            final FrontierLimits limits
+    ) {
+        this(downloader, downloaders, extractors, perHost, limits, Mode.LAYERED);
+    }
+
+    public WebCrawler(
+            final Downloader downloader,
+            final int downloaders,
+            final int extractors,
+            final int perHost,
+            final FrontierLimits limits,
+            final Mode mode
+    ) {
+        this(downloader, downloaders, extractors, perHost, limits, mode, Politeness.NONE);
+    }
+
+    public WebCrawler(
+            final Downloader downloader,
+            final int downloaders,
+            final int extractors,
+            final int perHost,
+            final FrontierLimits limits,
+            final Mode mode,
+            final Politeness politeness
+    ) {
+        this(downloader, Executors.newFixedThreadPool(downloaders), 0, extractors, perHost, limits, mode, politeness);
+    }
+
+    /**
+     * Creates crawler running every download on its own thread made by {@code downloadThreads},
+     * for example {@code Thread.ofVirtual().factory()}, so download concurrency is bounded only by
+     * {@code perHost} and {@code maxDownloads}.
+     * @param maxDownloads maximal number of downloads in flight, non-positive for no limit
+     */
+    public WebCrawler(
+            final Downloader downloader,
+            final ThreadFactory downloadThreads,
+            final int maxDownloads,
+            final int extractors,
+            final int perHost
+    ) {
+        this(downloader, downloadThreads, maxDownloads, extractors, perHost, FrontierLimits.UNBOUNDED, Mode.LAYERED);
+    }
+
+    public WebCrawler(
+            final Downloader downloader,
+            final ThreadFactory downloadThreads,
+            final int maxDownloads,
+            final int extractors,
+            final int perHost,
+            final FrontierLimits limits,
+            final Mode mode
+    ) {
+        this(downloader, downloadThreads, maxDownloads, extractors, perHost, limits, mode, Politeness.NONE);
+    }
+
+    public WebCrawler(
+            final Downloader downloader,
+            final ThreadFactory downloadThreads,
+            final int maxDownloads,
+            final int extractors,
+            final int perHost,
+            final FrontierLimits limits,
+            final Mode mode,
+            final Politeness politeness
+    ) {
+        // no core threads and no keep-alive: a new thread per download, but still an ExecutorService to shut down
+        this(downloader, new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                downloadThreads), maxDownloads, extractors, perHost, limits, mode, politeness);
+    }
+
+    private WebCrawler(
+            final Downloader downloader,
+            final ExecutorService downloadService,
+            final int maxDownloads,
+            final int extractors,
+            final int perHost,
+            final FrontierLimits limits,
+            final Mode mode,
+            final Politeness politeness
+    ) {
         this.downloader = downloader;
+        this.limits = limits;
+        this.mode = mode;
+        this.politeness = politeness;
+        this.wheel = politeness.isLimited() ? new TimerWheel(WHEEL_TICK, TimeUnit.MILLISECONDS, WHEEL_SIZE) : null;
         this.perHost = perHost;
-        this.downloadService = Executors.newFixedThreadPool(downloaders);
+        this.downloadService = downloadService;
         this.extractService = Executors.newFixedThreadPool(extractors);
-        this.hostsSemaphores = new ConcurrentHashMap<>();
+        this.downloads = maxDownloads > 0 ? new HostQueue(maxDownloads, downloadService) : downloadService;
+        this.hostQueues = new ConcurrentHashMap<>();
+    }
+
+    private HostQueue hostQueue(final String host) {
+        return hostQueues.computeIfAbsent(host, h -> new HostQueue(perHost, downloads, politeness, wheel));
     }
 
-    private static void addTask(final ExecutorService service, final Phaser phaser, final Runnable task) {
-        phaser.register();
-        service.submit(task);
+    /**
+     * Downloads {@code url} through the queue of its host, retrying failures as {@link Politeness} allows.
+     * Exactly one of {@code onDocument} and {@code onError} is called, then {@code onDone}.
+     */
+    private void fetch(
+            final String url,
+            final Consumer<Document> onDocument,
+            final Consumer<IOException> onError,
+            final Runnable onDone
+    ) {
+        final HostQueue queue = hostQueue(getHost(url));
+        queue.execute(new Runnable() {
+            private int attempt;
+
+            @Override
+            public void run() {
+                boolean retried = false;
+                try {
+                    final Document document = downloader.download(url);
+                    queue.succeeded();
+                    onDocument.accept(document);
+                } catch (final IOException exception) {
+                    queue.failed();
+                    if (attempt++ < politeness.getRetries()) {
+                        retried = true;
+                        queue.retry(this);
+                    } else {
+                        onError.accept(exception);
+                    }
+                } finally {
+                    if (!retried) {
+                        onDone.run();
+                    }
+                }
+            }
+        });
     }
 
     private static String getHost(final String url) {
@@ -41,74 +204,495 @@ public class WebCrawler implements AdvancedCrawler {
         return host != null && (hosts == null || hosts.contains(host));
     }
 
-    private Result downloadImpl(final String start, final int depth, final List<String> hosts) {
-        final Map<String, IOException> errors = new ConcurrentHashMap<>();
-        final Set<String> visited = ConcurrentHashMap.newKeySet();
-        final Set<String> hostsSet = (hosts == null? null : new HashSet<>(hosts));
-        final Queue<String> layer = new ArrayDeque<>();
-        if (isValidHost(getHost(start), hostsSet)) {
-            layer.add(start);
-            visited.add(start);
-        }
-        final Phaser phaser = new Phaser(1);
-        for (int i = 0; i < depth; i++) {
-            final Queue<String> nextLayer = new ArrayDeque<>();
-            final int remainingDepth = depth - i - 1;
-            while (!layer.isEmpty()) {
-                final String url = layer.poll();
-                final String host = getHost(url);
-                addTask(downloadService, phaser, () -> {
-                    final Semaphore semaphore = hostsSemaphores.computeIfAbsent(host, h -> new Semaphore(perHost));
-                    try {
-                        semaphore.acquireUninterruptibly();
-                        final Document document = downloader.download(url);
-                        if (remainingDepth > 0) {
-                            addTask(extractService, phaser, () -> {
-                                try {
-                                    final List<String> links = document.extractLinks();
-                                    for (final String link : links) {
-                                        if (isValidHost(getHost(link), hostsSet) && visited.add(link)) {
-                                            synchronized (nextLayer) {
-                                                nextLayer.add(link);
-                                            }
-                                        }
-                                    }
-                                } catch (final IOException exception) {
-                                    errors.put(url, exception);
-                                } finally {
-                                    phaser.arriveAndDeregister();
-                                }
-                            });
+    private static class ResultCollector implements CrawlListener {
+        private final Set<String> downloaded = ConcurrentHashMap.newKeySet();
+        private final Map<String, IOException> errors = new ConcurrentHashMap<>();
+
+        @Override
+        public void downloaded(final String url, final Document document) {
+            downloaded.add(url);
+        }
+
+        @Override
+        public void failed(final String url, final IOException exception) {
+            errors.put(url, exception);
+        }
+
+        private Result result() {
+            downloaded.removeAll(errors.keySet());
+            return new Result(new ArrayList<>(downloaded), errors);
+        }
+    }
+
+    private static class Event {
+        private static final Event END = new Event(null, null, null);
+
+        private final String url;
+        private final Document document;
+        private final IOException exception;
+
+        private Event(final String url, final Document document, final IOException exception) {
+            this.url = url;
+            this.document = document;
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Hands events over to the thread running the listener, waiting while the buffer is full.
+     */
+    private static class BufferedListener implements CrawlListener {
+        private final BlockingQueue<Event> events;
+
+        private BufferedListener(final int buffer) {
+            this.events = new ArrayBlockingQueue<>(buffer);
+        }
+
+        @Override
+        public void downloaded(final String url, final Document document) {
+            put(new Event(url, document, null));
+        }
+
+        @Override
+        public void failed(final String url, final IOException exception) {
+            put(new Event(url, null, exception));
+        }
+
+        private void put(final Event event) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    events.put(event);
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private class Crawl {
+        private final CrawlListener listener;
+        private final AtomicBoolean cancelled;
+        private final CrawlCheckpoint checkpoint;
+        private final VisitedSet visited = limits.newVisitedSet();
+        private final Set<String> hosts;
+        private final int depth;
+        private final Semaphore window = new Semaphore(LAYER_WINDOW);
+        private final AtomicReference<UncheckedIOException> spillError = new AtomicReference<>();
+
+        private Crawl(
+                final int depth,
+                final List<String> hosts,
+                final CrawlListener listener,
+                final AtomicBoolean cancelled,
+                final CrawlCheckpoint checkpoint
+        ) {
+            this.depth = depth;
+            this.hosts = (hosts == null? null : new HashSet<>(hosts));
+            this.listener = listener;
+            this.cancelled = cancelled;
+            this.checkpoint = checkpoint;
+        }
+
+        private boolean visit(final String url, final int distance) {
+            if (!cancelled.get() && isValidHost(getHost(url), hosts) && visited.add(url)) {
+                if (checkpoint != null) {
+                    checkpoint.visited(url, distance);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private void finished(final String url, final IOException exception) {
+            if (checkpoint != null) {
+                checkpoint.finished(url, exception);
+            }
+        }
+
+        private void crawlLayer(final SpillQueue layer, final SpillQueue nextLayer, final int remainingDepth) {
+            boolean held = false;
+            try {
+                while (!cancelled.get()) {
+                    // taken before polling, so urls past the window stay in the spilled layer
+                    window.acquireUninterruptibly();
+                    held = true;
+                    final String url = layer.poll();
+                    if (url == null) {
+                        break;
+                    }
+                    held = false;
+                    fetch(url, document -> {
+                        boolean extracting = false;
+                        try {
+                            listener.downloaded(url, document);
+                            if (remainingDepth > 0) {
+                                extractService.execute(() -> extract(url, document, nextLayer, remainingDepth));
+                                extracting = true;
+                            } else {
+                                finished(url, null);
+                            }
+                        } finally {
+                            if (!extracting) {
+                                window.release();
+                            }
+                        }
+                    }, exception -> {
+                        try {
+                            listener.failed(url, exception);
+                            finished(url, exception);
+                        } finally {
+                            window.release();
                         }
-                    } catch (final IOException exception) {
-                        errors.put(url, exception);
-                    } finally {
-                        phaser.arriveAndDeregister();
-                        semaphore.release();
+                    }, () -> {});
+                }
+            } finally {
+                if (held) {
+                    window.release();
+                }
+                // every page of the layer is done once all permits are back, even when reading the layer
+                // failed, so the caller closes the layers only after the last fetch and extract
+                window.acquireUninterruptibly(LAYER_WINDOW);
+                window.release(LAYER_WINDOW);
+            }
+            if (spillError.get() != null) {
+                throw spillError.get();
+            }
+        }
+
+        private void extract(
+                final String url,
+                final Document document,
+                final SpillQueue nextLayer,
+                final int remainingDepth
+        ) {
+            try {
+                final List<String> links = document.extractLinks();
+                for (final String link : links) {
+                    if (visit(link, depth - remainingDepth)) {
+                        nextLayer.add(link);
+                    }
+                }
+                // only after its links, so a resumed crawl never loses them
+                finished(url, null);
+            } catch (final IOException exception) {
+                listener.failed(url, exception);
+                finished(url, exception);
+            } catch (final UncheckedIOException exception) {
+                spillError.compareAndSet(null, exception);
+            } finally {
+                window.release();
+            }
+        }
+    }
+
+    private static class Page {
+        private int depth;
+        private int expanded = Integer.MAX_VALUE;
+        private Document document;
+
+        private Page(final int depth) {
+            this.depth = depth;
+        }
+    }
+
+    private class PipelinedCrawl {
+        private final CrawlListener listener;
+        private final AtomicBoolean cancelled;
+        private final Map<String, Page> pages = new ConcurrentHashMap<>();
+        private final Set<String> hosts;
+        private final int depth;
+        // a phaser cannot hold more than 65535 unarrived parties
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private PipelinedCrawl(
+                final int depth,
+                final List<String> hosts,
+                final CrawlListener listener,
+                final AtomicBoolean cancelled
+        ) {
+            this.depth = depth;
+            this.hosts = (hosts == null? null : new HashSet<>(hosts));
+            this.listener = listener;
+            this.cancelled = cancelled;
+        }
+
+        private void addTask(final Executor executor, final Runnable task) {
+            pending.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    arrive();
+                }
+            });
+        }
+
+        private void arrive() {
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+
+        private void discover(final String url, final int distance) {
+            if (distance >= depth || cancelled.get() || !isValidHost(getHost(url), hosts)) {
+                return;
+            }
+            final Page created = new Page(distance);
+            final Page page = pages.putIfAbsent(url, created);
+            if (page == null) {
+                pending.incrementAndGet();
+                fetch(url, document -> {
+                    synchronized (created) {
+                        created.document = document;
+                    }
+                    listener.downloaded(url, document);
+                    expand(url, created);
+                }, exception -> listener.failed(url, exception), this::arrive);
+                return;
+            }
+            // a shorter path to a page found after its links were extracted at a larger depth
+            synchronized (page) {
+                if (distance >= page.depth) {
+                    return;
+                }
+                page.depth = distance;
+                if (page.document == null) {
+                    return;
+                }
+            }
+            expand(url, page);
+        }
+
+        private void expand(final String url, final Page page) {
+            final int distance;
+            synchronized (page) {
+                if (page.depth >= depth - 1 || page.depth >= page.expanded) {
+                    return;
+                }
+                distance = page.depth;
+                page.expanded = distance;
+            }
+            addTask(extractService, () -> {
+                try {
+                    for (final String link : page.document.extractLinks()) {
+                        discover(link, distance + 1);
+                    }
+                } catch (final IOException exception) {
+                    listener.failed(url, exception);
+                }
+            });
+        }
+
+        private void crawl(final String start) {
+            discover(start, 0);
+            arrive();
+            // like the layered barrier, waits until every started task is done
+            boolean interrupted = false;
+            while (done.getCount() > 0) {
+                try {
+                    done.await();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void downloadImpl(
+            final String start,
+            final int depth,
+            final List<String> hosts,
+            final CrawlListener listener,
+            final AtomicBoolean cancelled
+    ) {
+        if (mode == Mode.PIPELINED) {
+            new PipelinedCrawl(depth, hosts, listener, cancelled).crawl(start);
+            return;
+        }
+        final Crawl crawl = new Crawl(depth, hosts, listener, cancelled, null);
+        crawlLayers(crawl, crawl.visit(start, 0) ? Map.of(start, 0) : Map.of());
+    }
+
+    /**
+     * Crawls layer by layer from {@code frontier}, urls already visited mapped to their distance from the start.
+     */
+    private void crawlLayers(final Crawl crawl, final Map<String, Integer> frontier) {
+        final int first = frontier.values().stream().min(Integer::compare).orElse(crawl.depth);
+        SpillQueue layer = limits.newLayer();
+        try {
+            for (int i = first; i < crawl.depth; i++) {
+                for (final Map.Entry<String, Integer> entry : frontier.entrySet()) {
+                    if (entry.getValue() == i) {
+                        layer.add(entry.getKey());
                     }
-                });
+                }
+                final SpillQueue nextLayer = limits.newLayer();
+                try {
+                    crawl.crawlLayer(layer, nextLayer, crawl.depth - i - 1);
+                } finally {
+                    layer.close();
+                    layer = nextLayer;
+                }
             }
-            phaser.arriveAndAwaitAdvance();
-            layer.addAll(nextLayer);
+        } finally {
+            layer.close();
         }
-        visited.removeAll(errors.keySet());
-        return new Result(new ArrayList<>(visited), errors);
     }
 
     @Override
     public Result download(final String url, final int depth, final List<String> hosts) {
-        return downloadImpl(url, depth, hosts);
+        final ResultCollector collector = new ResultCollector();
+        downloadImpl(url, depth, hosts, collector, new AtomicBoolean());
+        return collector.result();
     }
 
     @Override
     public Result download(final String url, final int depth) {
-        return downloadImpl(url, depth, null);
+        return download(url, depth, null);
+    }
+
+    /**
+     * Crawls like {@link #download(String, int, List)} in {@link Mode#LAYERED} mode, logging progress
+     * to {@code checkpoint} so that a crawl that died can be continued by {@link #resume(Path)}.
+     * @throws CrawlCheckpointException if the crawl finished but its log could not be written
+     */
+    public Result download(final String url, final int depth, final List<String> hosts, final Path checkpoint) {
+        final ResultCollector collector = new ResultCollector();
+        final CrawlCheckpoint log;
+        try {
+            log = CrawlCheckpoint.create(checkpoint, url, depth, hosts);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Cannot create crawl checkpoint", e);
+        }
+        final Crawl crawl = new Crawl(depth, hosts, collector, new AtomicBoolean(), log);
+        return crawlLogged(log, () -> crawlLayers(crawl, crawl.visit(url, 0) ? Map.of(url, 0) : Map.of()), collector);
+    }
+
+    /**
+     * Continues the crawl logged to {@code checkpoint} by {@link #download(String, int, List, Path)}.
+     * Pages finished before are not downloaded again, their results are taken from the log.
+     * @throws CrawlCheckpointException if the crawl finished but its log could not be written
+     */
+    public Result resume(final Path checkpoint) {
+        final ResultCollector collector = new ResultCollector();
+        final CrawlCheckpoint.State state;
+        final CrawlCheckpoint log;
+        try {
+            state = CrawlCheckpoint.read(checkpoint, (url, error) -> {
+                if (error == null) {
+                    collector.downloaded.add(url);
+                } else {
+                    collector.errors.put(url, new IOException(error));
+                }
+            });
+            log = CrawlCheckpoint.open(checkpoint, state);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Cannot resume crawl from " + checkpoint, e);
+        }
+        final Crawl crawl = new Crawl(state.getDepth(), state.getHosts(), collector, new AtomicBoolean(), log);
+        collector.downloaded.forEach(crawl.visited::add);
+        collector.errors.keySet().forEach(crawl.visited::add);
+        state.getPending().keySet().forEach(crawl.visited::add);
+        return crawlLogged(log, () -> crawlLayers(crawl, state.getPending()), collector);
+    }
+
+    /**
+     * Runs {@code crawl} and closes its log. If the log fails, a completed crawl's result is passed
+     * in a {@link CrawlCheckpointException}, a failed crawl gets the log failure suppressed.
+     */
+    private static Result crawlLogged(final CrawlCheckpoint log, final Runnable crawl, final ResultCollector collector) {
+        try {
+            crawl.run();
+        } catch (final RuntimeException | Error e) {
+            try {
+                log.close();
+            } catch (final IOException logError) {
+                e.addSuppressed(logError);
+            }
+            throw e;
+        }
+        try {
+            log.close();
+        } catch (final IOException e) {
+            throw new CrawlCheckpointException("Crawl checkpoint is incomplete", e, collector.result());
+        }
+        return collector.result();
+    }
+
+    /**
+     * Crawls like {@link #download(String, int, List)}, but passes pages to {@code listener} on the calling thread
+     * as they are processed instead of collecting a {@link Result}. At most {@code buffer} events wait for
+     * the listener, then crawl threads wait too, so a slow listener slows the crawl down.
+     * If the listener throws, the crawl is cancelled and the exception is rethrown once running downloads finish.
+     */
+    public void crawl(
+            final String url,
+            final int depth,
+            final List<String> hosts,
+            final CrawlListener listener,
+            final int buffer
+    ) throws InterruptedException {
+        final BufferedListener buffered = new BufferedListener(buffer);
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final AtomicReference<RuntimeException> crawlError = new AtomicReference<>();
+        final Thread crawler = new Thread(() -> {
+            try {
+                downloadImpl(url, depth, hosts, buffered, cancelled);
+            } catch (final RuntimeException e) {
+                crawlError.set(e);
+            } finally {
+                buffered.put(Event.END);
+            }
+        });
+        crawler.start();
+        try {
+            Event event;
+            while ((event = buffered.events.take()) != Event.END) {
+                if (event.exception == null) {
+                    listener.downloaded(event.url, event.document);
+                } else {
+                    listener.failed(event.url, event.exception);
+                }
+            }
+        } catch (final RuntimeException | InterruptedException e) {
+            cancelled.set(true);
+            // crawl threads may be waiting for room in the buffer
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (buffered.events.take() == Event.END) {
+                        break;
+                    }
+                } catch (final InterruptedException ignored) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            throw e;
+        }
+        if (crawlError.get() != null) {
+            throw crawlError.get();
+        }
     }
 
     @Override
     public void close() {
         shutdown(downloadService);
         shutdown(extractService);
+        if (wheel != null) {
+            wheel.close();
+        }
     }
 
     static void shutdown(final ExecutorService pool) {
@@ -126,19 +710,71 @@ public class WebCrawler implements AdvancedCrawler {
         return id < args.length? Integer.parseInt(args[id]) : defaultValue;
     }
 
-    public static void main(final String[] args) {
-        if (args == null || args.length == 0 || args.length > 5 || Arrays.stream(args).anyMatch(Objects::isNull)) {
-            System.err.println("Incorrect arguments. Expected: url [depth [downloads [extractors [perHost]]]]");
+    /**
+     * Virtual thread factory when the runtime has one, platform threads otherwise.
+     */
+    private static ThreadFactory downloadThreads() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (final ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.defaultThreadFactory();
+        }
+    }
+
+    public static void main(final String[] rawArgs) {
+        final String usage = "Incorrect arguments. Expected: [--virtual] [--checkpoint file] "
+                + "url [depth [downloads [extractors [perHost]]]] or [--virtual] --resume file [downloads [extractors [perHost]]]";
+        if (rawArgs == null || Arrays.stream(rawArgs).anyMatch(Objects::isNull)) {
+            System.err.println(usage);
+            return;
+        }
+        boolean virtual = false;
+        boolean resume = false;
+        String checkpointName = null;
+        int first = 0;
+        while (first < rawArgs.length && rawArgs[first].startsWith("--")) {
+            final String option = rawArgs[first++];
+            if (option.equals("--virtual")) {
+                virtual = true;
+            } else if ((option.equals("--checkpoint") || option.equals("--resume"))
+                    && checkpointName == null && first < rawArgs.length) {
+                resume = option.equals("--resume");
+                checkpointName = rawArgs[first++];
+            } else {
+                System.err.println(usage);
+                return;
+            }
+        }
+        final String[] args;
+        if (resume) {
+            // a resumed crawl takes its url and depth from the checkpoint, they only keep positions of the rest
+            args = new String[rawArgs.length - first + 2];
+            args[0] = "";
+            args[1] = "0";
+            System.arraycopy(rawArgs, first, args, 2, rawArgs.length - first);
+        } else {
+            args = Arrays.copyOfRange(rawArgs, first, rawArgs.length);
+        }
+        if (args.length == 0 || args.length > 5) {
+            System.err.println(usage);
             return;
         }
         final String url = args[0];
+        final Path checkpoint;
+        try {
+            checkpoint = checkpointName == null ? null : Path.of(checkpointName);
+        } catch (final InvalidPathException e) {
+            System.err.println("Invalid checkpoint path: " + e.getMessage());
+            return;
+        }
 
         if (Arrays.stream(Arrays.copyOfRange(args, 1, args.length)).anyMatch(arg -> {
             try {
                 Integer.parseInt(arg);
-                return true;
-            } catch (final NumberFormatException e) {
                 return false;
+            } catch (final NumberFormatException e) {
+                return true;
             }
         })) {
             System.err.println("Arguments expected to be integer numbers.");
@@ -146,7 +782,8 @@ public class WebCrawler implements AdvancedCrawler {
         }
 
         final int depth = getArg(args, 1, 2);
-        final int downloads = getArg(args, 2, 5);
+        // with --virtual, downloads is a global cap on downloads in flight, 0 for none
+        final int downloads = getArg(args, 2, virtual ? 0 : 5);
         final int extractors = getArg(args, 3, 5);
         final int perHost = getArg(args, 4, 5);
 
@@ -158,9 +795,25 @@ public class WebCrawler implements AdvancedCrawler {
             return;
         }
 
-        final Crawler crawler = new WebCrawler(downloader, downloads, extractors, perHost);
-        final Result result = crawler.download(url, depth);
-        crawler.close();
+        final WebCrawler crawler = virtual
+                ? new WebCrawler(downloader, downloadThreads(), downloads, extractors, perHost)
+                : new WebCrawler(downloader, downloads, extractors, perHost);
+        Result result;
+        try {
+            if (checkpoint == null) {
+                result = crawler.download(url, depth);
+            } else {
+                result = resume ? crawler.resume(checkpoint) : crawler.download(url, depth, null, checkpoint);
+            }
+        } catch (final CrawlCheckpointException e) {
+            System.err.println(e.getMessage() + ": " + e.getCause().getMessage());
+            result = e.getResult();
+        } catch (final UncheckedIOException e) {
+            System.err.println(e.getMessage() + ": " + e.getCause().getMessage());
+            return;
+        } finally {
+            crawler.close();
+        }
         System.out.println(result.getDownloaded().size() + " pages downloaded successfully:");
         for (final String string : result.getDownloaded()) {
             System.out.println(string);
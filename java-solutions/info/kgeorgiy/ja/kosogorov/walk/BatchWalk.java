@@ -0,0 +1,75 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Walks several roots concurrently. Each root is written to its own temporary part file,
+ * and parts are appended to the output in input order as soon as all preceding roots are done.
+ */
+public class BatchWalk {
+    private final RootWalker walker;
+    private final int concurrency;
+    private final Path tempDirectory;
+
+    public BatchWalk(RootWalker walker, int concurrency, Path tempDirectory) {
+        this.walker = walker;
+        this.concurrency = concurrency;
+        this.tempDirectory = tempDirectory;
+    }
+
+    public List<WalkMetrics> walk(List<String> roots, HashWriter output) throws IOException {
+        final List<Path> parts = new ArrayList<>();
+        final ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        try {
+            final List<Future<WalkMetrics>> futures = new ArrayList<>();
+            for (String root : roots) {
+                final Path part = Files.createTempFile(tempDirectory, "walk", ".part");
+                parts.add(part);
+                futures.add(pool.submit(() -> {
+                    try (HashWriter writer = new HashWriter(FileChannel.open(part, StandardOpenOption.WRITE))) {
+                        return walker.walk(root, writer);
+                    }
+                }));
+            }
+            final List<WalkMetrics> metrics = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                metrics.add(get(futures.get(i)));
+                output.append(parts.get(i));
+                Files.delete(parts.get(i));
+            }
+            return metrics;
+        } finally {
+            pool.shutdownNow();
+            for (Path part : parts) {
+                Files.deleteIfExists(part);
+            }
+        }
+    }
+
+    private static WalkMetrics get(Future<WalkMetrics> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for root walk");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Root walk failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
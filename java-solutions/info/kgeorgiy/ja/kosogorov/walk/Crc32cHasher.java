@@ -0,0 +1,28 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+public class Crc32cHasher implements FileHasher {
+    private final CRC32C crc = new CRC32C();
+
+    @Override
+    public void reset() {
+        crc.reset();
+    }
+
+    @Override
+    public void update(ByteBuffer data) {
+        final int position = data.position();
+        crc.update(data);
+        data.position(position);
+    }
+
+    @Override
+    public void digest(byte[] output) {
+        final long value = crc.getValue();
+        for (int i = 0; i < 4; i++) {
+            output[i] = (byte) (value >>> (24 - 8 * i));
+        }
+    }
+}
@@ -1,18 +1,83 @@
 package info.kgeorgiy.ja.kosogorov.walk;import java.io.BufferedReader;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.file.FileVisitOption;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
-import java.util.EnumSet;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DeepWalk {
-    public static void walk(String[] args, int depth) {
-        if (args == null || args.length != 2 || args[0] == null || args[1] == null) {
-            System.err.println("Expected 2 arguments <input file name> <output file name>");
+    private static final String USAGE =
+            "Expected arguments <input file name> <output file name> [--threads <number of hashing threads>]"
+                    + " [--hash pjw|xxh64|crc32c|sha256] [--cache <hash cache file>]"
+                    + " [--roots <number of roots walked concurrently>] [--metrics -|<metrics json file>]";
+
+    private static HashCache loadCache(String name, HashAlgorithm algorithm) {
+        if (name == null) {
+            return null;
+        }
+        final Path path = Path.of(name);
+        try {
+            return HashCache.load(path, algorithm);
+        } catch (IOException e) {
+            System.err.println("Can't load hash cache, starting with an empty one: " + e.getMessage());
+            return new HashCache(path, algorithm);
+        }
+    }
+
+    private static void saveCache(HashCache cache) {
+        if (cache == null) {
+            return;
+        }
+        System.err.println("Hash cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+        try {
+            cache.save();
+        } catch (IOException e) {
+            System.err.println("Can't save hash cache: " + e.getMessage());
+        }
+    }
+
+    private static void reportMetrics(List<WalkMetrics> metrics, String target) {
+        if ("-".equals(target)) {
+            metrics.forEach(System.err::println);
+            return;
+        }
+        try {
+            WalkMetrics.writeJson(metrics, Path.of(target));
+        } catch (InvalidPathException | IOException e) {
+            System.err.println("Can't write metrics: " + e.getMessage());
+        }
+    }
+
+    public static void walk(String[] rawArgs, int depth) {
+        final WalkOptions options;
+        final int threads;
+        final HashAlgorithm algorithm;
+        final int roots;
+        try {
+            options = new WalkOptions(rawArgs);
+            threads = options.getInt("threads", 1);
+            algorithm = HashAlgorithm.forName(options.get("hash", "pjw"));
+            roots = options.getInt("roots", 1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ". " + USAGE);
+            return;
+        }
+        if (options.getPositional().size() != 2) {
+            System.err.println(USAGE);
+            return;
+        }
+        final String[] args = options.getPositional().toArray(new String[0]);
+        final String metricsTarget = options.get("metrics", null);
+        final HashCache cache;
+        try {
+            cache = loadCache(options.get("cache", null), algorithm);
+        } catch (InvalidPathException e) {
+            System.err.println("Invalid hash cache path: " + e.getMessage());
             return;
         }
         Path inputFilePath;
@@ -38,26 +103,57 @@ public class DeepWalk {
             }
         }
         try (BufferedReader inputLines = Files.newBufferedReader(inputFilePath)) {
-            try (BufferedWriter writer = Files.newBufferedWriter(outputFilePath)) {
-                final HashFileVisitor fileVisitor = new HashFileVisitor(writer);
-                String line;
-                while (true) {
-                    try {
-                        line = inputLines.readLine();
-                    } catch (IOException e) {
-                        System.err.println("Error occurred while reading from input file: " + e.getMessage());
-                        return;
-                    }
-                    if (line == null) {
-                        break;
-                    }
-                    try {
-                        final Path path = Path.of(line);
-                        Files.walkFileTree(path, EnumSet.noneOf(FileVisitOption.class), depth, fileVisitor);
-                    } catch (InvalidPathException e) {
-                        writer.write(String.format("%016x", 0) + " " + line);
-                        writer.newLine();
+            try (HashWriter writer = new HashWriter(FileChannel.open(outputFilePath,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+                final RootWalker walker = new RootWalker(depth, algorithm, cache, threads);
+                final List<WalkMetrics> metrics = new ArrayList<>();
+                try {
+                    if (roots == 1) {
+                        final HashFileVisitor fileVisitor = walker.newVisitor(writer);
+                        try {
+                            String line;
+                            while (true) {
+                                try {
+                                    line = inputLines.readLine();
+                                } catch (IOException e) {
+                                    System.err.println("Error occurred while reading from input file: " + e.getMessage());
+                                    return;
+                                }
+                                if (line == null) {
+                                    break;
+                                }
+                                final long files = fileVisitor.getFiles();
+                                final long bytes = fileVisitor.getBytes();
+                                final long start = System.nanoTime();
+                                walker.walk(line, fileVisitor);
+                                if (metricsTarget != null) {
+                                    metrics.add(new WalkMetrics(line, fileVisitor.getFiles() - files,
+                                            fileVisitor.getBytes() - bytes, System.nanoTime() - start));
+                                }
+                            }
+                        } finally {
+                            fileVisitor.finish();
+                        }
+                    } else {
+                        final List<String> lines = new ArrayList<>();
+                        try {
+                            String line;
+                            while ((line = inputLines.readLine()) != null) {
+                                lines.add(line);
+                            }
+                        } catch (IOException e) {
+                            System.err.println("Error occurred while reading from input file: " + e.getMessage());
+                            return;
+                        }
+                        final Path tempDirectory = outputFilePath.toAbsolutePath().getParent();
+                        metrics.addAll(new BatchWalk(walker, roots, tempDirectory).walk(lines, writer));
                     }
+                } finally {
+                    walker.close();
+                    saveCache(cache);
+                }
+                if (metricsTarget != null) {
+                    reportMetrics(metrics, metricsTarget);
                 }
             } catch (IOException e) {
                 System.err.println("Error occurred while writing to output file: " + e.getMessage());
@@ -0,0 +1,237 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds duplicate files under the input roots. Files are grouped by size, then by hash of the first
+ * {@value #PREFIX_SIZE} bytes, and only files with colliding prefixes are hashed fully. Files with equal digests
+ * are compared byte by byte, so even a weak hash never reports different files as duplicates.
+ * Every file of a duplicate group is written as {@code <digest> <path>}, groups are separated by empty lines.
+ */
+public class DuplicateWalk {
+    private static final long PREFIX_SIZE = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String USAGE =
+            "Expected arguments <input file name> <output file name> [--hash pjw|xxh64|crc32c|sha256]";
+
+    private final HashAlgorithm algorithm;
+    private final HashEngine engine;
+    private final ByteBuffer left = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer right = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    public DuplicateWalk(HashAlgorithm algorithm) {
+        this.algorithm = algorithm;
+        this.engine = new HashEngine(algorithm.create());
+    }
+
+    private static class Candidate {
+        private final Path path;
+        private final byte[] digest;
+
+        private Candidate(Path path, byte[] digest) {
+            this.path = path;
+            this.digest = digest;
+        }
+    }
+
+    private static Map<Long, List<Path>> groupBySize(List<String> roots) throws IOException {
+        final Map<Long, List<Path>> bySize = new LinkedHashMap<>();
+        // overlapping roots reach the same file twice
+        final Set<Path> seen = new HashSet<>();
+        final SimpleFileVisitor<Path> visitor = new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && seen.add(file.toAbsolutePath().normalize())) {
+                    bySize.computeIfAbsent(attrs.size(), size -> new ArrayList<>()).add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        };
+        for (String root : roots) {
+            try {
+                Files.walkFileTree(Path.of(root), visitor);
+            } catch (InvalidPathException e) {
+                System.err.println("Invalid root path: " + e.getMessage());
+            }
+        }
+        return bySize;
+    }
+
+    private Collection<List<Candidate>> groupByHash(Collection<Path> files, long limit) {
+        final Map<ByteBuffer, List<Candidate>> byHash = new LinkedHashMap<>();
+        for (Path file : files) {
+            final byte[] digest = new byte[algorithm.getDigestLength()];
+            try {
+                engine.hash(file, digest, limit);
+            } catch (IOException e) {
+                continue;
+            }
+            byHash.computeIfAbsent(ByteBuffer.wrap(digest), d -> new ArrayList<>()).add(new Candidate(file, digest));
+        }
+        return byHash.values();
+    }
+
+    /**
+     * Splits files with equal digests into groups of byte-identical ones. Unreadable files are dropped.
+     */
+    private List<List<Candidate>> groupByContents(List<Candidate> candidates) {
+        final List<List<Candidate>> groups = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            try {
+                List<Candidate> same = null;
+                for (List<Candidate> group : groups) {
+                    if (sameContents(group.get(0).path, candidate.path)) {
+                        same = group;
+                        break;
+                    }
+                }
+                if (same == null) {
+                    same = new ArrayList<>();
+                    groups.add(same);
+                }
+                same.add(candidate);
+            } catch (IOException ignored) {
+            }
+        }
+        return groups;
+    }
+
+    private boolean sameContents(Path first, Path second) throws IOException {
+        try (FileChannel a = FileChannel.open(first, StandardOpenOption.READ);
+             FileChannel b = FileChannel.open(second, StandardOpenOption.READ)) {
+            while (true) {
+                final boolean end = fill(a, left) | fill(b, right);
+                if (!left.flip().equals(right.flip())) {
+                    return false;
+                }
+                if (end) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads into the cleared buffer until it is full, returning whether the end of the channel was reached.
+     */
+    private static boolean fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void find(List<String> roots, HashWriter writer) throws IOException {
+        boolean first = true;
+        for (Map.Entry<Long, List<Path>> sameSize : groupBySize(roots).entrySet()) {
+            if (sameSize.getValue().size() < 2) {
+                continue;
+            }
+            for (List<Candidate> samePrefix : groupByHash(sameSize.getValue(), PREFIX_SIZE)) {
+                if (samePrefix.size() < 2) {
+                    continue;
+                }
+                final Collection<List<Candidate>> groups;
+                if (sameSize.getKey() <= PREFIX_SIZE) {
+                    groups = List.of(samePrefix);
+                } else {
+                    final List<Path> paths = new ArrayList<>();
+                    samePrefix.forEach(candidate -> paths.add(candidate.path));
+                    groups = groupByHash(paths, Long.MAX_VALUE);
+                }
+                for (List<Candidate> sameHash : groups) {
+                    if (sameHash.size() < 2) {
+                        continue;
+                    }
+                    for (List<Candidate> group : groupByContents(sameHash)) {
+                        if (group.size() < 2) {
+                            continue;
+                        }
+                        if (!first) {
+                            writer.newLine();
+                        }
+                        first = false;
+                        for (Candidate candidate : group) {
+                            writer.write(candidate.digest, candidate.path.toString());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public static void main(String[] rawArgs) {
+        final WalkOptions options;
+        final HashAlgorithm algorithm;
+        try {
+            options = new WalkOptions(rawArgs);
+            algorithm = HashAlgorithm.forName(options.get("hash", "xxh64"));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ". " + USAGE);
+            return;
+        }
+        if (options.getPositional().size() != 2) {
+            System.err.println(USAGE);
+            return;
+        }
+        final Path input;
+        final Path output;
+        try {
+            input = Path.of(options.getPositional().get(0));
+            output = Path.of(options.getPositional().get(1));
+        } catch (InvalidPathException e) {
+            System.err.println("Invalid file path: " + e.getMessage());
+            return;
+        }
+        final List<String> roots = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(input)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                roots.add(line);
+            }
+        } catch (IOException e) {
+            System.err.println("Error occurred while reading from input file: " + e.getMessage());
+            return;
+        }
+        try {
+            final Path parent = output.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+        } catch (IOException e) {
+            System.err.println("Can't create output file's directories: " + e.getMessage());
+            return;
+        }
+        try (HashWriter writer = new HashWriter(FileChannel.open(output,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            new DuplicateWalk(algorithm).find(roots, writer);
+        } catch (IOException e) {
+            System.err.println("Error occurred while writing to output file: " + e.getMessage());
+        }
+    }
+}
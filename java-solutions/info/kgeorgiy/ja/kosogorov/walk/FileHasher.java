@@ -0,0 +1,20 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming hash over file contents. Instances are reused between files and are not thread-safe.
+ */
+public interface FileHasher {
+    void reset();
+
+    /**
+     * Consumes bytes from the buffer's position up to its limit, leaving the position unchanged.
+     */
+    void update(ByteBuffer data);
+
+    /**
+     * Writes the big-endian digest of all consumed bytes to {@code output}.
+     */
+    void digest(byte[] output);
+}
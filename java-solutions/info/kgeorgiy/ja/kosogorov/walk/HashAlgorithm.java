@@ -0,0 +1,43 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+public enum HashAlgorithm {
+    PJW(8, PjwHasher::new),
+    XXH64(8, XxHash64Hasher::new),
+    CRC32C(4, Crc32cHasher::new),
+    SHA256(32, Sha256Hasher::new);
+
+    private final int digestLength;
+    private final Supplier<FileHasher> factory;
+
+    HashAlgorithm(int digestLength, Supplier<FileHasher> factory) {
+        this.digestLength = digestLength;
+        this.factory = factory;
+    }
+
+    public int getDigestLength() {
+        return digestLength;
+    }
+
+    public FileHasher create() {
+        return factory.get();
+    }
+
+    public static HashAlgorithm forName(String name) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.name().equalsIgnoreCase(name)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unknown hash algorithm " + name + ", expected one of "
+                + Arrays.toString(values()).toLowerCase());
+    }
+
+    static void putLong(byte[] output, long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            output[i] = (byte) (value >>> (56 - 8 * i));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Digests of previous runs keyed by path, valid while file size, modification time and file key match.
+ * Only files visited during the current run are kept by {@link #save()}.
+ */
+public class HashCache {
+    private static final int MAGIC = 0x5741_4c4b;
+    private static final int VERSION = 1;
+
+    private final Path file;
+    private final HashAlgorithm algorithm;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static class Entry {
+        private final long size;
+        private final long modified;
+        private final String key;
+        private final byte[] digest;
+
+        private Entry(long size, long modified, String key, byte[] digest) {
+            this.size = size;
+            this.modified = modified;
+            this.key = key;
+            this.digest = digest;
+        }
+
+        private Entry(BasicFileAttributes attrs, byte[] digest) {
+            this(attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), fileKey(attrs), digest);
+        }
+
+        private boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size()
+                    && modified == attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                    && Objects.equals(key, fileKey(attrs));
+        }
+    }
+
+    public HashCache(Path file, HashAlgorithm algorithm) {
+        this(file, algorithm, new HashMap<>());
+    }
+
+    private HashCache(Path file, HashAlgorithm algorithm, Map<String, Entry> previous) {
+        this.file = file;
+        this.algorithm = algorithm;
+        this.previous = previous;
+    }
+
+    private static String fileKey(BasicFileAttributes attrs) {
+        final Object key = attrs.fileKey();
+        return key == null ? "" : key.toString();
+    }
+
+    /**
+     * Loads cache from {@code file}. Missing file or a cache built with other algorithm gives an empty cache.
+     */
+    public static HashCache load(Path file, HashAlgorithm algorithm) throws IOException {
+        if (!Files.exists(file)) {
+            return new HashCache(file, algorithm);
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Not a hash cache file: " + file);
+            }
+            if (!algorithm.name().equals(readString(input))) {
+                return new HashCache(file, algorithm);
+            }
+            final int size = input.readInt();
+            final Map<String, Entry> entries = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                final String path = readString(input);
+                final long fileSize = input.readLong();
+                final long modified = input.readLong();
+                final String key = readString(input);
+                final byte[] digest = new byte[algorithm.getDigestLength()];
+                input.readFully(digest);
+                entries.put(path, new Entry(fileSize, modified, key, digest));
+            }
+            return new HashCache(file, algorithm, entries);
+        } catch (EOFException e) {
+            throw new IOException("Corrupted hash cache file: " + file, e);
+        }
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        final int length = input.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupted hash cache file");
+        }
+        final byte[] bytes = input.readNBytes(length);
+        if (bytes.length != length) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putString(DataOutputStream output, String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    public byte[] get(Path path, BasicFileAttributes attrs) {
+        final String name = path.toString();
+        final Entry entry = previous.get(name);
+        if (entry == null || !entry.matches(attrs)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        current.put(name, entry);
+        return entry.digest;
+    }
+
+    public void put(Path path, BasicFileAttributes attrs, byte[] digest) {
+        current.put(path.toString(), new Entry(attrs, digest));
+    }
+
+    /**
+     * Writes entries of the current run to a temporary file and atomically moves it over the cache file.
+     */
+    public void save() throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        final Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                putString(output, algorithm.name());
+                output.writeInt(current.size());
+                for (Map.Entry<String, Entry> entry : current.entrySet()) {
+                    putString(output, entry.getKey());
+                    output.writeLong(entry.getValue().size);
+                    output.writeLong(entry.getValue().modified);
+                    putString(output, entry.getValue().key);
+                    output.write(entry.getValue().digest);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
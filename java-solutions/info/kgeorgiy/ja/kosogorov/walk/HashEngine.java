@@ -0,0 +1,59 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads files through a {@link FileChannel}: small files go through a reused direct buffer,
+ * large ones are memory-mapped window by window. Not thread-safe, use one engine per thread.
+ */
+public class HashEngine {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAP_THRESHOLD = 1 << 20;
+    private static final long MAP_WINDOW = 1 << 30;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final FileHasher hasher;
+
+    public HashEngine(FileHasher hasher) {
+        this.hasher = hasher;
+    }
+
+    public void hash(Path file, byte[] digest) throws IOException {
+        hash(file, digest, Long.MAX_VALUE);
+    }
+
+    /**
+     * Hashes at most {@code limit} first bytes of the file.
+     */
+    public void hash(Path file, byte[] digest, long limit) throws IOException {
+        hasher.reset();
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = Math.min(channel.size(), limit);
+            long position = 0;
+            if (size >= MAP_THRESHOLD) {
+                while (position < size) {
+                    final long length = Math.min(MAP_WINDOW, size - position);
+                    hasher.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                    position += length;
+                }
+                channel.position(position);
+            }
+            while (position < limit) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), limit - position));
+                final int read = channel.read(buffer);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+                buffer.flip();
+                hasher.update(buffer);
+            }
+        }
+        hasher.digest(digest);
+    }
+}
@@ -1,59 +1,91 @@
 package info.kgeorgiy.ja.kosogorov.walk;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 
 public class HashFileVisitor extends SimpleFileVisitor<Path> {
-    private final BufferedWriter writer;
-    private final static long ZERO_HASH = 0L;
-    private final static int BUFFER_SIZE = 1024;
-
-    private long hash(Path file) {
-        try (final InputStream input = Files.newInputStream(file)) {
-            long result = 0;
-            final byte[] buffer = new byte[BUFFER_SIZE];
-            int size;
-            int singleByte;
-            while ((size = input.read(buffer)) >= 0) {
-                for (int i = 0; i < size; i++) {
-                    singleByte = buffer[i] & 0xff;
-                    result = (result << 8) + (singleByte & 0xff);
-                    final long high = result & 0xff00_0000_0000_0000L;
-                    if (high != 0) {
-                        result ^= high >> 48;
-                        result &= ~high;
-                    }
-                }
-            }
-            return result;
+    private final HashWriter writer;
+    private final ThreadLocal<HashEngine> engines;
+    private final HashCache cache;
+    protected final byte[] zeroHash;
+    private final byte[] digest;
+    private long files;
+    private long bytes;
+
+    protected byte[] cached(Path file, BasicFileAttributes attrs) {
+        return cache == null ? null : cache.get(file, attrs);
+    }
+
+    /**
+     * Hashes {@code file} into {@code digest}, returning it, or {@link #zeroHash} if the file cannot be read.
+     */
+    protected byte[] hash(Path file, BasicFileAttributes attrs, byte[] digest) {
+        try {
+            engines.get().hash(file, digest);
         } catch (IOException ignored) {
-            return ZERO_HASH;
+            return zeroHash;
         }
+        if (cache != null) {
+            cache.put(file, attrs, digest.clone());
+        }
+        return digest;
+    }
+
+    public HashFileVisitor(HashWriter writer) {
+        this(writer, HashAlgorithm.PJW, null);
     }
 
-    public HashFileVisitor(BufferedWriter writer) {
+    public HashFileVisitor(HashWriter writer, HashAlgorithm algorithm, HashCache cache) {
         this.writer = writer;
+        this.cache = cache;
+        this.engines = ThreadLocal.withInitial(() -> new HashEngine(algorithm.create()));
+        this.zeroHash = new byte[algorithm.getDigestLength()];
+        this.digest = new byte[algorithm.getDigestLength()];
+    }
+
+    protected void write(String name, byte[] hash) throws IOException {
+        writer.write(hash, name);
     }
 
-    private FileVisitResult writeWithHash(Path path, long hash) throws IOException {
-        writer.write(String.format("%016x", hash) + " " + path);
-        writer.newLine();
+    protected FileVisitResult writeWithHash(Path path, byte[] hash) throws IOException {
+        write(path.toString(), hash);
         return FileVisitResult.CONTINUE;
     }
 
+    protected void count(BasicFileAttributes attrs) {
+        files++;
+        if (attrs != null) {
+            bytes += attrs.size();
+        }
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void visitInvalid(String name) throws IOException {
+        write(name, zeroHash);
+    }
+
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-        return writeWithHash(file, hash(file));
+        count(attrs);
+        final byte[] cached = cached(file, attrs);
+        return writeWithHash(file, cached != null ? cached : hash(file, attrs, digest));
     }
 
     @Override
     public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-        return writeWithHash(file, ZERO_HASH);
+        count(null);
+        return writeWithHash(file, zeroHash);
     }
-}
 
+    public void finish() throws IOException {
+    }
+}
@@ -0,0 +1,102 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes {@code <hex digest> <name>} lines, encoding them to UTF-8 through reused buffers
+ * and flushing to the channel in large chunks. Not thread-safe.
+ */
+public class HashWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private CharBuffer line = CharBuffer.allocate(256);
+
+    public HashWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    public void write(byte[] hash, String name) throws IOException {
+        final int length = hash.length * 2 + 1 + name.length() + LINE_SEPARATOR.length();
+        if (line.capacity() < length) {
+            line = CharBuffer.allocate(Math.max(length, line.capacity() * 2));
+        }
+        final char[] chars = line.array();
+        int position = 0;
+        for (byte b : hash) {
+            chars[position++] = HEX_DIGITS[(b >> 4) & 0xf];
+            chars[position++] = HEX_DIGITS[b & 0xf];
+        }
+        chars[position++] = ' ';
+        name.getChars(0, name.length(), chars, position);
+        position += name.length();
+        LINE_SEPARATOR.getChars(0, LINE_SEPARATOR.length(), chars, position);
+        line.position(0).limit(length);
+        encode();
+    }
+
+    public void newLine() throws IOException {
+        LINE_SEPARATOR.getChars(0, LINE_SEPARATOR.length(), line.array(), 0);
+        line.position(0).limit(LINE_SEPARATOR.length());
+        encode();
+    }
+
+    private void encode() throws IOException {
+        encoder.reset();
+        CoderResult result;
+        while ((result = encoder.encode(line, output, true)).isOverflow()) {
+            flush();
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+        while (encoder.flush(output).isOverflow()) {
+            flush();
+        }
+    }
+
+    /**
+     * Flushes buffered lines and copies contents of {@code file} after them.
+     */
+    public void append(Path file) throws IOException {
+        flush();
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = source.size();
+            long position = 0;
+            while (position < size) {
+                position += source.transferTo(position, size - position, channel);
+            }
+        }
+    }
+
+    public void flush() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            channel.write(output);
+        }
+        output.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
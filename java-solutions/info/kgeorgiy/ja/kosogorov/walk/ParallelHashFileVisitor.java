@@ -0,0 +1,134 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Hashes visited files on a pool of workers. Traversal blocks once {@code threads * QUEUE_PER_THREAD}
+ * lines are in flight, and lines are written in visit order, so output matches {@link HashFileVisitor}.
+ */
+public class ParallelHashFileVisitor extends HashFileVisitor {
+    private static final int QUEUE_PER_THREAD = 64;
+
+    private final ExecutorService workers;
+    private final boolean ownsWorkers;
+    private final Semaphore inFlight;
+    private final int capacity;
+    private final Map<Long, Line> ready = new HashMap<>();
+    private long submitted;
+    private long written;
+    private IOException error;
+
+    private static class Line {
+        private final String name;
+        private final byte[] hash;
+
+        private Line(String name, byte[] hash) {
+            this.name = name;
+            this.hash = hash;
+        }
+    }
+
+    public ParallelHashFileVisitor(HashWriter writer, HashAlgorithm algorithm, HashCache cache, int threads) {
+        this(writer, algorithm, cache, Executors.newFixedThreadPool(threads), threads, true);
+    }
+
+    /**
+     * Creates visitor hashing on a shared pool of {@code threads} workers, which is not shut down by {@link #finish()}.
+     */
+    public ParallelHashFileVisitor(HashWriter writer, HashAlgorithm algorithm, HashCache cache,
+                                   ExecutorService workers, int threads) {
+        this(writer, algorithm, cache, workers, threads, false);
+    }
+
+    private ParallelHashFileVisitor(HashWriter writer, HashAlgorithm algorithm, HashCache cache,
+                                    ExecutorService workers, int threads, boolean ownsWorkers) {
+        super(writer, algorithm, cache);
+        this.workers = workers;
+        this.ownsWorkers = ownsWorkers;
+        this.capacity = threads * QUEUE_PER_THREAD;
+        this.inFlight = new Semaphore(capacity);
+    }
+
+    private long next() throws IOException {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for hashing workers");
+        }
+        checkError();
+        return submitted++;
+    }
+
+    private void checkError() throws IOException {
+        synchronized (ready) {
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    private void complete(long index, String name, byte[] hash) {
+        synchronized (ready) {
+            ready.put(index, new Line(name, hash));
+            Line line;
+            while ((line = ready.remove(written)) != null) {
+                if (error == null) {
+                    try {
+                        super.write(line.name, line.hash);
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                }
+                written++;
+                inFlight.release();
+            }
+        }
+    }
+
+    @Override
+    protected void write(String name, byte[] hash) throws IOException {
+        complete(next(), name, hash);
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        count(attrs);
+        final byte[] cached = cached(file, attrs);
+        if (cached != null) {
+            return writeWithHash(file, cached);
+        }
+        final long index = next();
+        workers.execute(() -> {
+            byte[] hash = zeroHash;
+            try {
+                // the digest waits in the reorder map until its turn, so it cannot share a buffer
+                hash = hash(file, attrs, new byte[zeroHash.length]);
+            } finally {
+                complete(index, file.toString(), hash);
+            }
+        });
+        return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        try {
+            inFlight.acquireUninterruptibly(capacity);
+            inFlight.release(capacity);
+        } finally {
+            if (ownsWorkers) {
+                workers.shutdown();
+            }
+        }
+        checkError();
+    }
+}
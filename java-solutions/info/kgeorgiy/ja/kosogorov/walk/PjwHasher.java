@@ -0,0 +1,33 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.nio.ByteBuffer;
+
+public class PjwHasher implements FileHasher {
+    private long result;
+
+    @Override
+    public void reset() {
+        result = 0;
+    }
+
+    @Override
+    public void update(ByteBuffer data) {
+        // every step depends on the high byte of the previous one, so bytes are consumed one at a time
+        long result = this.result;
+        final int limit = data.limit();
+        for (int i = data.position(); i < limit; i++) {
+            result = (result << 8) + (data.get(i) & 0xff);
+            final long high = result & 0xff00_0000_0000_0000L;
+            if (high != 0) {
+                result ^= high >> 48;
+                result &= ~high;
+            }
+        }
+        this.result = result;
+    }
+
+    @Override
+    public void digest(byte[] output) {
+        HashAlgorithm.putLong(output, result);
+    }
+}
@@ -0,0 +1,62 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Walks input roots with shared settings. With more than one thread, all visitors hash on one shared pool.
+ */
+public class RootWalker implements AutoCloseable {
+    private final int depth;
+    private final HashAlgorithm algorithm;
+    private final HashCache cache;
+    private final int threads;
+    private final ExecutorService hashers;
+
+    public RootWalker(int depth, HashAlgorithm algorithm, HashCache cache, int threads) {
+        this.depth = depth;
+        this.algorithm = algorithm;
+        this.cache = cache;
+        this.threads = threads;
+        this.hashers = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+    }
+
+    public HashFileVisitor newVisitor(HashWriter writer) {
+        return hashers == null
+                ? new HashFileVisitor(writer, algorithm, cache)
+                : new ParallelHashFileVisitor(writer, algorithm, cache, hashers, threads);
+    }
+
+    public void walk(String root, HashFileVisitor visitor) throws IOException {
+        try {
+            final Path path = Path.of(root);
+            Files.walkFileTree(path, EnumSet.noneOf(FileVisitOption.class), depth, visitor);
+        } catch (InvalidPathException e) {
+            visitor.visitInvalid(root);
+        }
+    }
+
+    public WalkMetrics walk(String root, HashWriter writer) throws IOException {
+        final long start = System.nanoTime();
+        final HashFileVisitor visitor = newVisitor(writer);
+        try {
+            walk(root, visitor);
+        } finally {
+            visitor.finish();
+        }
+        return new WalkMetrics(root, visitor.getFiles(), visitor.getBytes(), System.nanoTime() - start);
+    }
+
+    @Override
+    public void close() {
+        if (hashers != null) {
+            hashers.shutdown();
+        }
+    }
+}
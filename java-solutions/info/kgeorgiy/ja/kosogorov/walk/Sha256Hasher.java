@@ -0,0 +1,39 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class Sha256Hasher implements FileHasher {
+    private final MessageDigest digest;
+
+    public Sha256Hasher() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void reset() {
+        digest.reset();
+    }
+
+    @Override
+    public void update(ByteBuffer data) {
+        final int position = data.position();
+        digest.update(data);
+        data.position(position);
+    }
+
+    @Override
+    public void digest(byte[] output) {
+        try {
+            digest.digest(output, 0, output.length);
+        } catch (DigestException e) {
+            throw new IllegalArgumentException("Output too short for SHA-256 digest", e);
+        }
+    }
+}
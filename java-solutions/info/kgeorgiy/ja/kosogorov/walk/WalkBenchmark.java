@@ -0,0 +1,198 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Throughput measurements for the walk tools. Every scenario runs a few warm-up rounds first and prints
+ * the best of the measured ones, so results are comparable between runs on the same machine.
+ */
+public class WalkBenchmark {
+    private static final String USAGE = "Expected arguments engine <directory> [<max size MiB>]"
+            + " | algorithms <directory> [<size MiB>] | writer <directory> [<files>]";
+    private static final int WARMUP = 2;
+    private static final int ROUNDS = 5;
+    private static final long MIN_BYTES = 64L << 20;
+
+    private interface Measured {
+        void run() throws IOException;
+    }
+
+    private static long best(Measured measured) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            measured.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            final long start = System.nanoTime();
+            measured.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static Path createFile(Path directory, long size) throws IOException {
+        final Path file = directory.resolve("file-" + size);
+        if (Files.exists(file) && Files.size(file) == size) {
+            return file;
+        }
+        final Random random = new Random(size);
+        final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long written = 0;
+            while (written < size) {
+                random.nextBytes(buffer.array());
+                buffer.clear().limit((int) Math.min(buffer.capacity(), size - written));
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer);
+                }
+            }
+        }
+        return file;
+    }
+
+    /**
+     * The hashing loop {@link HashFileVisitor} had before {@link HashEngine}: a fresh buffer per file and
+     * an {@link InputStream}.
+     */
+    private static long streamPjw(Path file) throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            long result = 0;
+            final byte[] buffer = new byte[1024];
+            int size;
+            while ((size = input.read(buffer)) >= 0) {
+                for (int i = 0; i < size; i++) {
+                    result = (result << 8) + (buffer[i] & 0xff);
+                    final long high = result & 0xff00_0000_0000_0000L;
+                    if (high != 0) {
+                        result ^= high >> 48;
+                        result &= ~high;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Hashes files from empty up to {@code maxSize} with the stream loop and with {@link HashEngine},
+     * repeating small files so that every round reads at least {@value #MIN_BYTES} bytes.
+     */
+    private static void engine(Path directory, long maxSize) throws IOException {
+        Files.createDirectories(directory);
+        final List<Long> sizes = new ArrayList<>(List.of(0L));
+        for (long size = 1024; size <= maxSize; size *= 16) {
+            sizes.add(size);
+        }
+        final HashEngine engine = new HashEngine(HashAlgorithm.PJW.create());
+        final byte[] digest = new byte[HashAlgorithm.PJW.getDigestLength()];
+        System.out.println("size        repeats  stream ns/file  engine ns/file  stream MiB/s  engine MiB/s");
+        for (long size : sizes) {
+            final Path file = createFile(directory, size);
+            final long repeats = Math.max(1, Math.min(100_000, MIN_BYTES / Math.max(1, size)));
+            final long stream = best(() -> {
+                for (long i = 0; i < repeats; i++) {
+                    streamPjw(file);
+                }
+            });
+            final long mapped = best(() -> {
+                for (long i = 0; i < repeats; i++) {
+                    engine.hash(file, digest);
+                }
+            });
+            System.out.printf(Locale.ROOT, "%-11d %7d %15d %15d %13.1f %13.1f%n", size, repeats,
+                    stream / repeats, mapped / repeats, rate(size * repeats, stream), rate(size * repeats, mapped));
+        }
+    }
+
+    /**
+     * Hashes one file of {@code size} bytes with every {@link HashAlgorithm} through {@link HashEngine}.
+     */
+    private static void algorithms(Path directory, long size) throws IOException {
+        Files.createDirectories(directory);
+        final Path file = createFile(directory, size);
+        System.out.println("algorithm  GB/s");
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            final HashEngine engine = new HashEngine(algorithm.create());
+            final byte[] digest = new byte[algorithm.getDigestLength()];
+            final long nanos = best(() -> engine.hash(file, digest));
+            System.out.printf(Locale.ROOT, "%-10s %.2f%n", algorithm.name().toLowerCase(), size / (double) nanos);
+        }
+    }
+
+    /**
+     * Writes a line for every file of a tree of {@code count} empty files, once through
+     * {@code String.format} and a {@link BufferedWriter}, as {@link HashFileVisitor} did, and once through
+     * {@link HashWriter}. The tree is walked once beforehand, so only the output is measured.
+     */
+    private static void writer(Path directory, int count) throws IOException {
+        final Path tree = directory.resolve("tree-" + count);
+        final Path output = directory.resolve("out.txt");
+        if (!Files.isDirectory(tree)) {
+            for (int i = 0; i < count; i++) {
+                final Path file = tree.resolve(String.format("%03d", i % 1000)).resolve("file-" + i);
+                if (i < 1000) {
+                    Files.createDirectories(file.getParent());
+                }
+                Files.createFile(file);
+            }
+        }
+        final List<String> names = new ArrayList<>(count);
+        try (var files = Files.walk(tree)) {
+            files.filter(Files::isRegularFile).forEach(file -> names.add(file.toString()));
+        }
+        final byte[] digest = new byte[HashAlgorithm.PJW.getDigestLength()];
+        final long format = best(() -> {
+            try (BufferedWriter writer = Files.newBufferedWriter(output)) {
+                for (String name : names) {
+                    writer.write(String.format("%016x", 0L) + " " + name);
+                    writer.newLine();
+                }
+            }
+        });
+        final long encoded = best(() -> {
+            try (HashWriter writer = new HashWriter(FileChannel.open(output, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+                for (String name : names) {
+                    writer.write(digest, name);
+                }
+            }
+        });
+        System.out.printf(Locale.ROOT, "%d lines: format %.0f lines/s, writer %.0f lines/s%n",
+                names.size(), names.size() / (format / 1e9), names.size() / (encoded / 1e9));
+    }
+
+    private static double rate(long bytes, long nanos) {
+        return bytes / (double) (1 << 20) / (nanos / 1e9);
+    }
+
+    public static void main(String[] args) {
+        if (args == null || args.length < 2 || args[0] == null || args[1] == null) {
+            System.err.println(USAGE);
+            return;
+        }
+        try {
+            switch (args[0]) {
+                case "engine" -> engine(Path.of(args[1]), (args.length > 2 ? Long.parseLong(args[2]) : 256) << 20);
+                case "algorithms" -> algorithms(Path.of(args[1]), (args.length > 2 ? Long.parseLong(args[2]) : 1024) << 20);
+                case "writer" -> writer(Path.of(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000);
+                default -> System.err.println(USAGE);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage() + ". " + USAGE);
+        } catch (IOException e) {
+            System.err.println("Benchmark failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+public class WalkMetrics {
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double BYTES_PER_MEGABYTE = 1 << 20;
+
+    private final String root;
+    private final long files;
+    private final long bytes;
+    private final long elapsedNanos;
+
+    public WalkMetrics(String root, long files, long bytes, long elapsedNanos) {
+        this.root = root;
+        this.files = files;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytes / BYTES_PER_MEGABYTE / (elapsedNanos / NANOS_PER_SECOND);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s: %d files, %d bytes, %.3f s, %.1f MiB/s",
+                root, files, bytes, elapsedNanos / NANOS_PER_SECOND, getMegabytesPerSecond());
+    }
+
+    private String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"root\": \"%s\", \"files\": %d, \"bytes\": %d, \"elapsedNanos\": %d, \"mibPerSecond\": %.3f}",
+                escape(root), files, bytes, elapsedNanos, getMegabytesPerSecond());
+    }
+
+    private static String escape(String string) {
+        final StringBuilder result = new StringBuilder();
+        for (char c : string.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < ' ') {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    public static void writeJson(List<WalkMetrics> metrics, Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("[");
+            for (int i = 0; i < metrics.size(); i++) {
+                writer.newLine();
+                writer.write("  " + metrics.get(i).toJson() + (i + 1 < metrics.size() ? "," : ""));
+            }
+            writer.newLine();
+            writer.write("]");
+            writer.newLine();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class WalkOptions {
+    private static final String PREFIX = "--";
+
+    private final List<String> positional = new ArrayList<>();
+    private final Map<String, String> options = new HashMap<>();
+
+    public WalkOptions(String[] args) {
+        if (args == null) {
+            throw new IllegalArgumentException("Arguments expected");
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] == null) {
+                throw new IllegalArgumentException("Null argument at position " + i);
+            }
+            if (args[i].startsWith(PREFIX)) {
+                if (i + 1 == args.length || args[i + 1] == null) {
+                    throw new IllegalArgumentException("Value expected for option " + args[i]);
+                }
+                options.put(args[i].substring(PREFIX.length()), args[++i]);
+            } else {
+                positional.add(args[i]);
+            }
+        }
+    }
+
+    public List<String> getPositional() {
+        return positional;
+    }
+
+    public String get(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    public int getInt(String name, int defaultValue) {
+        final String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            final int result = Integer.parseInt(value);
+            if (result <= 0) {
+                throw new IllegalArgumentException("Option --" + name + " expected to be positive: " + value);
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " expected to be integer: " + value);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package info.kgeorgiy.ja.kosogorov.walk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * xxHash64 with zero seed, consuming 32-byte stripes as four little-endian longs.
+ */
+public class XxHash64Hasher implements FileHasher {
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE = 32;
+
+    private final ByteBuffer tail = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long total;
+
+    public XxHash64Hasher() {
+        reset();
+    }
+
+    @Override
+    public void reset() {
+        v1 = P1 + P2;
+        v2 = P2;
+        v3 = 0;
+        v4 = -P1;
+        total = 0;
+        tail.clear();
+    }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * P2, 31) * P1;
+    }
+
+    private static long merge(long acc, long value) {
+        return (acc ^ round(0, value)) * P1 + P4;
+    }
+
+    private void stripe(ByteBuffer data, int offset) {
+        v1 = round(v1, data.getLong(offset));
+        v2 = round(v2, data.getLong(offset + 8));
+        v3 = round(v3, data.getLong(offset + 16));
+        v4 = round(v4, data.getLong(offset + 24));
+    }
+
+    @Override
+    public void update(ByteBuffer data) {
+        final ByteOrder order = data.order();
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        int i = data.position();
+        final int limit = data.limit();
+        total += limit - i;
+        if (tail.position() > 0) {
+            while (i < limit && tail.hasRemaining()) {
+                tail.put(data.get(i++));
+            }
+            if (tail.hasRemaining()) {
+                data.order(order);
+                return;
+            }
+            stripe(tail, 0);
+            tail.clear();
+        }
+        for (; i + STRIPE <= limit; i += STRIPE) {
+            stripe(data, i);
+        }
+        while (i < limit) {
+            tail.put(data.get(i++));
+        }
+        data.order(order);
+    }
+
+    @Override
+    public void digest(byte[] output) {
+        long hash;
+        if (total >= STRIPE) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+        } else {
+            hash = P5;
+        }
+        hash += total;
+        final int size = tail.position();
+        int i = 0;
+        for (; i + 8 <= size; i += 8) {
+            hash = Long.rotateLeft(hash ^ round(0, tail.getLong(i)), 27) * P1 + P4;
+        }
+        if (i + 4 <= size) {
+            hash = Long.rotateLeft(hash ^ (tail.getInt(i) & 0xFFFF_FFFFL) * P1, 23) * P2 + P3;
+            i += 4;
+        }
+        for (; i < size; i++) {
+            hash = Long.rotateLeft(hash ^ (tail.get(i) & 0xFFL) * P5, 11) * P1;
+        }
+        hash ^= hash >>> 33;
+        hash *= P2;
+        hash ^= hash >>> 29;
+        hash *= P3;
+        hash ^= hash >>> 32;
+        HashAlgorithm.putLong(output, hash);
+    }
+}
@@ -6,6 +6,7 @@ module java.solutions {
     requires info.kgeorgiy.java.advanced.crawler;
     requires info.kgeorgiy.java.advanced.hello;
     requires java.rmi;
+    requires java.management;
     exports info.kgeorgiy.ja.kosogorov.implementor;
     exports info.kgeorgiy.ja.kosogorov.concurrent;
     exports info.kgeorgiy.ja.kosogorov.bank;